@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning a large set of resolved dependencies into a classpath argument: deduplication and joining,
+ * cache validation, and the reuse check of the files written for long command lines.
+ *
+ * @author Thuan Luong
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClasspathBenchmark {
+
+    @Param({"50", "400", "2000"})
+    public int dependencyCount;
+
+    private final SilentLog log = new SilentLog();
+
+    private File directory;
+
+    private List<String> elements;
+
+    private ClasspathCache cache;
+
+    private File manifestJar;
+
+    private File argumentFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("classpath-benchmark").toFile();
+        elements = new ArrayList<>();
+        for (int i = 0; i < dependencyCount; i++) {
+            final File jar = new File(directory, "group" + (i % 20) + "/artifact-" + i + "/1.0." + i + "/artifact-" + i + "-1.0." + i + ".jar");
+            Files.createDirectories(jar.getParentFile().toPath());
+            Files.write(jar.toPath(), new byte[]{(byte) i});
+            elements.add(jar.getAbsolutePath());
+        }
+        // shared transitive dependencies show up more than once before deduplication
+        elements.addAll(elements.subList(0, dependencyCount / 4));
+
+        cache = new ClasspathCache(new File(directory, "cache"), log);
+        cache.put("benchmark", elements);
+        manifestJar = new File(directory, "classpath.jar");
+        LaunchFiles.writeManifestJar(manifestJar, new LinkedHashSet<>(elements));
+        argumentFile = new File(directory, "benchmark.args");
+        LaunchFiles.writeArgumentFile(argumentFile, elements);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.walkFileTree(directory.toPath(), new DeletingFileVisitor());
+    }
+
+    @Benchmark
+    public String dedupeAndJoin() {
+        return Classpath.join(new LinkedHashSet<>(elements));
+    }
+
+    @Benchmark
+    public List<String> cachedClasspathLookup() {
+        return cache.get("benchmark");
+    }
+
+    @Benchmark
+    public boolean unchangedManifestJar() throws IOException {
+        return LaunchFiles.writeManifestJar(manifestJar, new LinkedHashSet<>(elements));
+    }
+
+    @Benchmark
+    public boolean unchangedArgumentFile() throws IOException {
+        return LaunchFiles.writeArgumentFile(argumentFile, elements);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the system property and environment variable transformations applied to every process.
+ *
+ * @author Thuan Luong
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessConfigurationBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int entryCount;
+
+    private Map<String, String> systemProperties;
+
+    private Map<String, String> environmentVariables;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        systemProperties = new HashMap<>();
+        environmentVariables = new HashMap<>();
+        for (int i = 0; i < entryCount; i++) {
+            systemProperties.put(" service.property." + i + " ", " value-" + i + " ");
+            environmentVariables.put("SERVICE_VARIABLE_" + i, i % 10 == 0 ? null : "value-" + i);
+        }
+    }
+
+    @Benchmark
+    public ProcessExecutor withSystemProperties() {
+        return ProcessExecutor.create("benchmark", "/bin/true", Collections.<String>emptyList())
+                .withSystemProperties(systemProperties);
+    }
+
+    @Benchmark
+    public ProcessExecutor withEnvironmentVariables() {
+        return ProcessExecutor.create("benchmark", "/bin/true", Collections.<String>emptyList())
+                .withEnvironmentVariables(environmentVariables);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of launching a short-lived process and waiting for it to exit, for each way of handling its output.
+ *
+ * @author Thuan Luong
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProcessSpawnBenchmark {
+
+    @Param({"/bin/echo"})
+    public String executable;
+
+    @Param({"inheritIO", "outputFile", "piped"})
+    public String outputMode;
+
+    private final SilentLog log = new SilentLog();
+
+    private File workingDir;
+
+    private File outputFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workingDir = Files.createTempDirectory("spawn-benchmark").toFile();
+        outputFile = new File(workingDir, "output.log");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        outputFile.delete();
+        workingDir.delete();
+    }
+
+    @Benchmark
+    public int spawnAndWait() throws MojoExecutionException {
+        final ProcessExecutor processExecutor = ProcessExecutor.create("benchmark", executable, Arrays.asList("hello"));
+        if ("outputFile".equals(outputMode)) {
+            processExecutor.withOutputFile(outputFile);
+        } else if ("piped".equals(outputMode)) {
+            processExecutor.withOutputPump(LogLevel.DEBUG, 100);
+        }
+        processExecutor.execute(workingDir, log);
+        processExecutor.waitFor();
+        return processExecutor.exitValue();
+    }
+}
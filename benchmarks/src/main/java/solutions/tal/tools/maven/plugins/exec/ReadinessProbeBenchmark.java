@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of a single readiness probe against a local stub server, i.e. the cost paid on every poll.
+ *
+ * @author Thuan Luong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadinessProbeBenchmark {
+
+    private static final byte[] BODY = "{\"status\":\"UP\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final SilentLog log = new SilentLog();
+
+    private HttpServer server;
+
+    private AbstractPollingReadinessCheck.Probe tcpProbe;
+
+    private AbstractPollingReadinessCheck.Probe httpProbe;
+
+    private AbstractPollingReadinessCheck.Probe httpBodyProbe;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, MojoExecutionException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 50);
+        server.createContext("/health", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, BODY.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(BODY);
+                }
+            }
+        });
+        server.start();
+        final int port = server.getAddress().getPort();
+        final ProcessExecutor process = ProcessExecutor.create("stub", "/bin/true", Collections.<String>emptyList());
+
+        final TcpPortReadinessCheck tcp = new TcpPortReadinessCheck();
+        tcp.setHost("127.0.0.1");
+        tcp.setPort(String.valueOf(port));
+        tcpProbe = tcp.createProbe(log, process);
+
+        final HttpReadinessCheck http = new HttpReadinessCheck();
+        http.setUrl("http://127.0.0.1:" + port + "/health");
+        httpProbe = http.createProbe(log, process);
+
+        final HttpReadinessCheck httpBody = new HttpReadinessCheck();
+        httpBody.setUrl("http://127.0.0.1:" + port + "/health");
+        httpBody.setExpectedBodyPattern("\"status\"\\s*:\\s*\"UP\"");
+        httpBodyProbe = httpBody.createProbe(log, process);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public boolean tcpConnect() throws MojoExecutionException {
+        return tcpProbe.isReady();
+    }
+
+    @Benchmark
+    public boolean httpStatus() throws MojoExecutionException {
+        return httpProbe.isReady();
+    }
+
+    @Benchmark
+    public boolean httpStatusAndBody() throws MojoExecutionException {
+        return httpBodyProbe.isReady();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base class for readiness checks which repeatedly probe the started process until it reports itself as ready.
+ * The delay between two probes starts at {@code intervalMillis} and grows by {@code backoffMultiplier} up to
+ * {@code maxIntervalMillis}. The build fails once {@code timeoutMillis} has elapsed or as soon as the process exits.
+ *
+ * @author Thuan Luong
+ */
+public abstract class AbstractPollingReadinessCheck implements ApplicationReadiness {
+
+    private long timeoutMillis = 60000;
+
+    private long intervalMillis = 250;
+
+    private long maxIntervalMillis = 2000;
+
+    private double backoffMultiplier = 1.5;
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public void setIntervalMillis(long intervalMillis) {
+        this.intervalMillis = intervalMillis;
+    }
+
+    public void setMaxIntervalMillis(long maxIntervalMillis) {
+        this.maxIntervalMillis = maxIntervalMillis;
+    }
+
+    public void setBackoffMultiplier(double backoffMultiplier) {
+        this.backoffMultiplier = backoffMultiplier;
+    }
+
+    @Override
+    public void waitForReadiness(Log log, ProcessExecutor process) throws MojoExecutionException {
+        final String processName = process.getName();
+        log.info(String.format("Waiting up to %d ms for %s of process '%s'", timeoutMillis, describe(process), processName));
+
+        final Probe probe = createProbe(log, process);
+        try {
+            final long startNanos = System.nanoTime();
+            final long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            long delayMillis = Math.max(1, intervalMillis);
+            int attempts = 0;
+            for (;;) {
+                if (!process.isAlive()) {
+                    throw new MojoExecutionException(String.format("Process '%s' exited with code %d before becoming ready",
+                            processName, process.exitValue()));
+                }
+                attempts++;
+                if (probe.isReady()) {
+                    log.info(String.format("Process '%s' is ready after %d ms (%d attempts)", processName,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), attempts));
+                    return;
+                }
+                final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    throw new MojoExecutionException(String.format("Process '%s' did not become ready within %d ms (%d attempts)",
+                            processName, timeoutMillis, attempts));
+                }
+                try {
+                    TimeUnit.MILLISECONDS.sleep(Math.min(delayMillis, remainingMillis));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("Interrupted while waiting for process '" + processName + "'", e);
+                }
+                delayMillis = Math.max(intervalMillis, Math.min((long) (delayMillis * backoffMultiplier), maxIntervalMillis));
+            }
+        } finally {
+            probe.close();
+        }
+    }
+
+    /**
+     * @return a short description of what is being probed, used for logging
+     */
+    abstract String describe(ProcessExecutor process);
+
+    /**
+     * Creates the probe used for a single wait. Any state a probe needs between two attempts must live in the probe
+     * so that the same check can be shared by several processes.
+     */
+    abstract Probe createProbe(Log log, ProcessExecutor process) throws MojoExecutionException;
+
+    interface Probe {
+
+        boolean isReady() throws MojoExecutionException;
+
+        /**
+         * Releases what the probe holds between two attempts once it is no longer used.
+         */
+        default void close() {
+        }
+    }
+}
@@ -16,17 +16,23 @@
 
 package solutions.tal.tools.maven.plugins.exec;
 
+import com.google.common.base.Joiner;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Plugin;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Thuan Luong
@@ -36,20 +42,29 @@ abstract class AbstractProcessExecutorMojo extends AbstractMojo {
     @Parameter(defaultValue = "${project}", readonly = true)
     MavenProject project;
 
+    @Parameter(defaultValue = "${session}", readonly = true)
+    MavenSession session;
+
+    @Parameter(defaultValue = "${plugin}", readonly = true)
+    private PluginDescriptor pluginDescriptor;
 
     @Parameter(defaultValue = "false")
     private boolean waitForInterrupt;
 
-    AbstractProcessExecutorMojo() {
-        Runtime.getRuntime().addShutdownHook(new Thread() {
-            @Override
-            public void run() {
-                final Deque<ProcessExecutor> processExecutors = PluginExecutionStateHolder.getProcesses(getPluginContext());
-                if (!processExecutors.isEmpty()) {
-                    stopAllProcesses();
-                }
-            }
-        });
+    /**
+     * Time given to processes to exit after they have been asked to stop, before they are killed.
+     */
+    @Parameter(defaultValue = "30000")
+    private long shutdownGracePeriodMillis;
+
+    /**
+     * Time to wait for a killed process to exit.
+     */
+    @Parameter(defaultValue = "10000")
+    private long shutdownKillTimeoutMillis;
+
+    long getShutdownGracePeriodMillis() {
+        return shutdownGracePeriodMillis;
     }
 
     void waitForInterruptIfRequired() throws MojoExecutionException {
@@ -73,14 +88,108 @@ abstract class AbstractProcessExecutorMojo extends AbstractMojo {
         }
     }
 
-    void stopAllProcesses() {
+    /**
+     * Registers a process about to be started, so that it is stopped by {@code stop-all} of this module or, if the
+     * build does not get there, when the JVM exits.
+     */
+    void registerProcess(ProcessExecutor processExecutor) {
+        PluginExecutionStateHolder.addProcess(processExecutor, getPluginContext());
+        ProcessShutdownHook.register(processExecutor, newShutdownEngine());
+    }
+
+    /**
+     * Stops the processes of this module and the shared processes no longer needed by the reactor, leaving those
+     * to be kept alive running.
+     *
+     * @return the stopped and the kept alive processes
+     */
+    List<ProcessExecutor> stopAllProcesses() {
         final Deque<ProcessExecutor> processExecutors = PluginExecutionStateHolder.getProcesses(getPluginContext());
-        while (!processExecutors.isEmpty()) {
-            final ProcessExecutor processExecutor = processExecutors.pop();
-            getLog().info("Stopping process: " + processExecutor.getName());
-            processExecutor.stop();
-            processExecutor.waitFor();
-            getLog().info("Stopped process: " + processExecutor.getName());
+        final List<ProcessExecutor> processesToStop = new ArrayList<>();
+        ProcessExecutor processExecutor;
+        while ((processExecutor = processExecutors.poll()) != null) {
+            processesToStop.add(processExecutor);
+        }
+        stopOrDetach(processesToStop);
+
+        final Set<String> sharedProcesses = PluginExecutionStateHolder.getSharedProcesses(getPluginContext());
+        final List<ProcessExecutor> unreferenced = SharedProcessRegistry.release(project.getId(), sharedProcesses,
+                hasUnfinishedProjectsUsingPlugin());
+        sharedProcesses.clear();
+        if (!unreferenced.isEmpty()) {
+            getLog().info("Stopping shared processes no longer needed by the reactor");
+            stopOrDetach(unreferenced);
+            processesToStop.addAll(unreferenced);
+        }
+        reportTimings(processesToStop);
+        return processesToStop;
+    }
+
+    private void stopOrDetach(List<ProcessExecutor> processExecutors) {
+        final List<ProcessExecutor> processesToStop = new ArrayList<>();
+        for (ProcessExecutor processExecutor : processExecutors) {
+            if (processExecutor.isKeepAlive() && processExecutor.isAlive()) {
+                processExecutor.detach();
+                getLog().info(String.format("Leaving process '%s' (pid %d) running for the next build",
+                        processExecutor.getName(), processExecutor.getPid()));
+            } else {
+                processesToStop.add(processExecutor);
+            }
+        }
+        newShutdownEngine().stop(processesToStop);
+        ProcessShutdownHook.unregister(processesToStop);
+    }
+
+    /**
+     * Fails the build if any of the given processes has been found failed by its {@link ProcessWatchdog watchdog}.
+     */
+    void failOnProcessFailures(Collection<ProcessExecutor> processExecutors) throws MojoFailureException {
+        final List<String> failures = new ArrayList<>();
+        for (ProcessExecutor processExecutor : processExecutors) {
+            if (processExecutor.getFailure() != null) {
+                failures.add(processExecutor.getFailure());
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new MojoFailureException(Joiner.on(System.lineSeparator()).join(failures));
+        }
+    }
+
+    private void reportTimings(List<ProcessExecutor> stoppedProcesses) {
+        if (stoppedProcesses.isEmpty()) {
+            return;
+        }
+        for (ProcessExecutor processExecutor : stoppedProcesses) {
+            getLog().info("Timings of process '" + processExecutor.getName() + "': " + processExecutor.getTimings());
+            TimingReport.add(session, project.getId(), processExecutor);
+        }
+        final MavenProject reportProject = session != null && session.getTopLevelProject() != null
+                ? session.getTopLevelProject() : project;
+        TimingReport.write(new File(reportProject.getBuild().getDirectory(), "exec-process/timings.json"), getLog());
+    }
+
+    ProcessShutdownEngine newShutdownEngine() {
+        return new ProcessShutdownEngine(getLog(), shutdownGracePeriodMillis, shutdownKillTimeoutMillis);
+    }
+
+    /**
+     * @return whether another module of the reactor which uses this plugin has not finished building yet
+     */
+    private boolean hasUnfinishedProjectsUsingPlugin() {
+        if (session == null || pluginDescriptor == null) {
+            return false;
+        }
+        for (MavenProject reactorProject : session.getProjects()) {
+            if (reactorProject.getId().equals(project.getId())
+                    || session.getResult().getBuildSummary(reactorProject) != null) {
+                continue;
+            }
+            for (Plugin plugin : reactorProject.getBuildPlugins()) {
+                if (pluginDescriptor.getPluginLookupKey().equals(plugin.getKey())) {
+                    return true;
+                }
+            }
         }
+        return false;
     }
 }
@@ -0,0 +1,517 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicates;
+import com.google.common.base.Strings;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Exclusion;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.DefaultArtifact;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.repository.RepositoryPolicy;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.resolution.DependencyRequest;
+import org.eclipse.aether.resolution.DependencyResolutionException;
+import org.eclipse.aether.resolution.DependencyResult;
+import org.eclipse.aether.util.filter.DependencyFilterUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Common support for the goals which start processes: resolution of {@link Classpath} arguments and derivation of
+ * the working directory.
+ *
+ * @author Thuan Luong
+ */
+abstract class AbstractStartProcessMojo extends AbstractProcessExecutorMojo {
+
+    @Component
+    private RepositorySystem repositorySystem;
+
+    @Parameter(defaultValue = "${repositorySystemSession}", readonly = true)
+    private RepositorySystemSession repositorySystemSession;
+
+    @Parameter(defaultValue = "${project.remoteProjectRepositories}", readonly = true)
+    private List<RemoteRepository> remoteProjectRepositories;
+
+    /**
+     * Whether resolved dependency classpaths are cached on disk and reused while the resolved artifacts are unchanged.
+     * The cache is bypassed when the build forces snapshot updates ({@code -U}) and for classpaths involving SNAPSHOTs
+     * or version ranges, which may resolve differently once a remote repository changes.
+     */
+    @Parameter(property = "exec-process.useClasspathCache", defaultValue = "true")
+    private boolean useClasspathCache;
+
+    @Parameter(defaultValue = "${project.build.directory}/exec-process/classpath-cache")
+    private File classpathCacheDirectory;
+
+    /**
+     * Directory holding the argument files and pathing jars generated for {@link CommandLineMode}s other than
+     * {@link CommandLineMode#INLINE}.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/exec-process/launch")
+    private File launchFilesDirectory;
+
+    /**
+     * Directory holding the class data sharing archives of processes started with {@code appCds}.
+     */
+    @Parameter(defaultValue = "${project.build.directory}/exec-process/cds")
+    private File appCdsDirectory;
+
+    /**
+     * Time the {@code -Xshare:dump} run creating a class data sharing archive may take. When it is exceeded the run is
+     * killed and the process is launched without the archive.
+     */
+    @Parameter(defaultValue = "120000")
+    private long appCdsDumpTimeoutMillis;
+
+    private final Map<List<Object>, Set<String>> resolvedClasspaths = new HashMap<>();
+
+    /**
+     * Interval between two resource samples of processes started with {@code sampleResources}.
+     */
+    @Parameter(defaultValue = "1000")
+    private long resourceSampleIntervalMillis;
+
+    @Parameter(defaultValue = "${project.build.directory}/exec-process/metrics")
+    private File resourceReportDirectory;
+
+    /**
+     * Directory in which started processes are recorded while they run. Processes recorded there by a build whose
+     * JVM is gone, e.g. because it has been killed, are killed together with their descendants when processes are
+     * started again. The directory may be shared by builds, processes of running builds are left alone.
+     */
+    @Parameter
+    private File pidDirectory;
+
+    /**
+     * Interval in which started processes are watched once they are ready, zero disables watching. A process exiting
+     * or failing its health check before it is stopped is reported at once and fails the build in {@code stop-all} or
+     * {@code check}.
+     */
+    @Parameter(defaultValue = "1000")
+    private long watchdogIntervalMillis;
+
+    /**
+     * Whether a watched process may exit with code 0 before it is stopped, e.g. a process which only initializes
+     * something and then ends, without failing the build.
+     */
+    @Parameter(property = "exec-process.allowCleanExit", defaultValue = "false")
+    private boolean allowCleanExit;
+
+    /**
+     * Number of consecutive failed health checks after which a process is considered failed.
+     */
+    @Parameter(defaultValue = "3")
+    private int healthFailureThreshold;
+
+    /**
+     * Leave the started processes running after {@code stop-all} and the end of the build, and reattach to them in the
+     * next build as long as their configuration and classpath are unchanged and they still pass their readiness
+     * check. A process started without this setting stops the process kept alive under its name.
+     */
+    @Parameter(property = "exec-process.keepAlive", defaultValue = "false")
+    private boolean keepAlive;
+
+    /**
+     * Directory holding the state and, without an output file, the output of processes kept alive.
+     */
+    @Parameter(defaultValue = "${java.io.tmpdir}/exec-process-keep-alive")
+    private File keepAliveDirectory;
+
+    boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Records the classpath of a forked process passed one, so that its fingerprint covers the classpath rather than
+     * the module-specific path of a pathing jar.
+     */
+    ProcessExecutor withClasspathIfRequired(ProcessExecutor processExecutor, CommandLineMode commandLineMode,
+                                            List<?> arguments, List<String> additionalClasspathElements,
+                                            List<Dependency> dependencies) throws MojoExecutionException {
+        if (arguments != null && Iterables.any(arguments, Predicates.instanceOf(Classpath.class))) {
+            final Set<String> classpathElements = resolveClasspathElements(additionalClasspathElements, dependencies);
+            processExecutor.withClasspathElements(classpathElements, commandLineMode == CommandLineMode.MANIFEST_JAR
+                    ? manifestJar(processExecutor.getName()).getAbsolutePath() : Classpath.join(classpathElements));
+        }
+        return processExecutor;
+    }
+
+    /**
+     * Marks the given process to be kept alive when {@code keepAlive} is set.
+     */
+    ProcessExecutor withKeepAliveIfRequired(ProcessExecutor processExecutor) {
+        if (!keepAlive) {
+            return processExecutor;
+        }
+        final File stateFile = keepAliveStateFile(processExecutor);
+        return processExecutor.withKeepAlive(new File(stateFile.getParentFile(), stateFile.getName() + ".log"), getLog());
+    }
+
+    /**
+     * Kills the processes an earlier build left behind in the {@code pidDirectory}, if configured.
+     */
+    void reapLeftoverProcesses() {
+        if (pidDirectory != null) {
+            PidFiles.reapLeftovers(pidDirectory, getShutdownGracePeriodMillis(), getLog());
+        }
+    }
+
+    /**
+     * Enables resource sampling on the given process when {@code sampleResources} is set.
+     */
+    ProcessExecutor withResourceSamplingIfRequired(ProcessExecutor processExecutor, boolean sampleResources) {
+        return sampleResources
+                ? processExecutor.withResourceSampling(resourceSampleIntervalMillis, resourceReportDirectory)
+                : processExecutor;
+    }
+
+    /**
+     * Starts the process and waits for it to become ready, recording the time spent in both, then watches it.
+     */
+    void startProcess(ProcessExecutor processExecutor, File workingDir, ApplicationReadiness readinessCheck,
+                      AbstractPollingReadinessCheck healthCheck) throws MojoExecutionException {
+        final File stateFile = keepAliveStateFile(processExecutor);
+        String fingerprint = null;
+        if (processExecutor.isKeepAlive()) {
+            fingerprint = KeepAliveProcesses.fingerprint(processExecutor, workingDir);
+            if (reattach(processExecutor, stateFile, fingerprint, readinessCheck)) {
+                startWatchdogIfRequired(processExecutor, healthCheck);
+                return;
+            }
+            try {
+                Files.createDirectories(keepAliveDirectory.toPath());
+            } catch (IOException e) {
+                throw new MojoExecutionException("Could not create directory " + keepAliveDirectory, e);
+            }
+        } else {
+            KeepAliveProcesses.discard(stateFile, getShutdownGracePeriodMillis(), getLog());
+        }
+
+        getLog().info("Starting process: " + processExecutor.getName());
+        processExecutor.withPidDirectory(pidDirectory).execute(workingDir, getLog());
+        if (fingerprint != null) {
+            // recorded at once, as neither a PID file nor the shutdown hook cover a process kept alive
+            try {
+                KeepAliveProcesses.record(stateFile, processExecutor.getName(), processExecutor.getProcessHandle(),
+                        fingerprint);
+            } catch (IOException e) {
+                processExecutor.forceStop();
+                throw new MojoExecutionException("Could not record process '" + processExecutor.getName()
+                        + "' to keep it alive", e);
+            }
+        }
+        try {
+            waitForReadiness(processExecutor, readinessCheck);
+        } catch (MojoExecutionException | RuntimeException e) {
+            if (fingerprint != null) {
+                processExecutor.forceStop();
+                processExecutor.waitFor(getShutdownGracePeriodMillis(), TimeUnit.MILLISECONDS);
+                PidFiles.delete(stateFile);
+            }
+            throw e;
+        }
+        getLog().info("Started process: " + processExecutor.getName() + " (" + processExecutor.getTimings() + ")");
+        startWatchdogIfRequired(processExecutor, healthCheck);
+    }
+
+    /**
+     * Reattaches to the process kept alive by an earlier build with the same fingerprint, if it is still ready. A
+     * process which is no longer ready is killed.
+     *
+     * @return whether the process has been reattached to
+     */
+    private boolean reattach(ProcessExecutor processExecutor, File stateFile, String fingerprint,
+                             ApplicationReadiness readinessCheck) throws MojoExecutionException {
+        final Optional<ProcessHandle> keptProcess = KeepAliveProcesses.find(stateFile, fingerprint,
+                getShutdownGracePeriodMillis(), getLog());
+        if (!keptProcess.isPresent()) {
+            return false;
+        }
+        processExecutor.attach(keptProcess.get());
+        try {
+            waitForReadiness(processExecutor, readinessCheck);
+        } catch (MojoExecutionException e) {
+            getLog().warn("Process '" + processExecutor.getName() + "' kept alive by an earlier build is not ready, "
+                    + "restarting it: " + e.getMessage());
+            KeepAliveProcesses.discard(stateFile, getShutdownGracePeriodMillis(), getLog());
+            return false;
+        }
+        getLog().info(String.format("Reattached to process '%s' (pid %d) kept alive by an earlier build (%s)",
+                processExecutor.getName(), keptProcess.get().pid(), processExecutor.getTimings()));
+        return true;
+    }
+
+    private void waitForReadiness(ProcessExecutor processExecutor,
+                                  ApplicationReadiness readinessCheck) throws MojoExecutionException {
+        if (readinessCheck != null) {
+            final long readinessStart = System.nanoTime();
+            readinessCheck.waitForReadiness(getLog(), processExecutor);
+            processExecutor.getTimings().recordSince(ProcessTimings.Phase.READINESS, readinessStart);
+        }
+    }
+
+    private void startWatchdogIfRequired(ProcessExecutor processExecutor,
+                                         AbstractPollingReadinessCheck healthCheck) throws MojoExecutionException {
+        if (watchdogIntervalMillis > 0) {
+            processExecutor.startWatchdog(watchdogIntervalMillis, healthCheck, healthFailureThreshold, allowCleanExit,
+                    getLog());
+        }
+    }
+
+    private File keepAliveStateFile(ProcessExecutor processExecutor) {
+        return KeepAliveProcesses.stateFile(keepAliveDirectory, project.getGroupId() + "." + project.getArtifactId(),
+                project.getBasedir(), processExecutor.getName());
+    }
+
+    File deriveWorkingDir(File workingDir) {
+        return workingDir != null ? workingDir : new File(project.getBuild().getOutputDirectory());
+    }
+
+    List<String> buildCommandArguments(String processName, CommandLineMode commandLineMode, List<?> arguments,
+                                       List<String> additionalClasspathElements,
+                                       List<Dependency> dependencies) throws MojoExecutionException {
+        final List<String> commandArguments = new ArrayList<>();
+        if (arguments == null) {
+            return commandArguments;
+        }
+        String classpath = null;
+        for (Object argument : arguments) {
+            if (argument instanceof Classpath) {
+                if (classpath == null) {
+                    classpath = buildClasspathStringArgument(processName, commandLineMode,
+                            additionalClasspathElements, dependencies);
+                }
+                commandArguments.add(classpath);
+            } else if (argument instanceof String) {
+                commandArguments.add((String) argument);
+            }
+        }
+        return commandArguments;
+    }
+
+    /**
+     * @return the file the arguments of the named process are written to in {@link CommandLineMode#ARGUMENT_FILE} mode
+     */
+    File argumentFile(String processName) {
+        return new File(launchFilesDirectory, processName + ".args");
+    }
+
+    /**
+     * @return the JVM options which make a Java process create or use its class data sharing archive
+     */
+    List<String> appCdsOptions(String processName, String javaExecutable, List<String> commandArguments,
+                               List<String> additionalClasspathElements,
+                               List<Dependency> dependencies) throws MojoExecutionException {
+        return AppCdsArchives.jvmOptions(appCdsDirectory, processName, javaExecutable,
+                resolveClasspathElements(additionalClasspathElements, dependencies), commandArguments,
+                appCdsDumpTimeoutMillis, getLog());
+    }
+
+    /**
+     * Resolves the classpath at most once per combination of elements and dependencies in this execution.
+     */
+    Set<String> resolveClasspathElements(List<String> additionalClasspathElements,
+                                                 List<Dependency> dependencies) throws MojoExecutionException {
+        final List<Object> key = Arrays.<Object>asList(additionalClasspathElements, dependencies);
+        Set<String> classpathElements = resolvedClasspaths.get(key);
+        if (classpathElements == null) {
+            final List<String> runtimeClasspathElements = new ArrayList<>();
+            if (additionalClasspathElements != null) {
+                runtimeClasspathElements.addAll(additionalClasspathElements);
+            }
+
+            augmentClasspathElementsForDependencies(runtimeClasspathElements, dependencies);
+            // keep the first occurrence of every element, later duplicates would never be loaded from anyway
+            classpathElements = new LinkedHashSet<>(runtimeClasspathElements);
+            resolvedClasspaths.put(key, classpathElements);
+        }
+        return classpathElements;
+    }
+
+    private File manifestJar(String processName) {
+        return new File(launchFilesDirectory, processName + "-classpath.jar");
+    }
+
+    private String buildClasspathStringArgument(String processName, CommandLineMode commandLineMode,
+                                                List<String> additionalClasspathElements,
+                                                List<Dependency> dependencies) throws MojoExecutionException {
+        final Set<String> classpathElements = resolveClasspathElements(additionalClasspathElements, dependencies);
+
+        if (commandLineMode == CommandLineMode.MANIFEST_JAR) {
+            final File manifestJar = manifestJar(processName);
+            try {
+                if (!LaunchFiles.writeManifestJar(manifestJar, classpathElements)) {
+                    getLog().debug("Reusing unchanged classpath jar " + manifestJar);
+                }
+            } catch (IOException e) {
+                throw new MojoExecutionException("Could not write classpath jar " + manifestJar, e);
+            }
+            return manifestJar.getAbsolutePath();
+        }
+
+        return Classpath.join(classpathElements);
+    }
+
+    private void augmentClasspathElementsForDependencies(List<String> runtimeClasspathElements,
+                                                         List<Dependency> dependencies) throws MojoExecutionException {
+        if (dependencies == null || dependencies.isEmpty()) {
+            return;
+        }
+        final ClasspathCache cache = useClasspathCache ? new ClasspathCache(classpathCacheDirectory, getLog()) : null;
+        final String cacheKey = classpathCacheKey(dependencies);
+        if (cache != null && !RepositoryPolicy.UPDATE_POLICY_ALWAYS.equals(repositorySystemSession.getUpdatePolicy())
+                && !hasChangingVersion(dependencies)) {
+            final List<String> cached = cache.get(cacheKey);
+            if (cached != null) {
+                getLog().debug("Using cached classpath for " + dependencies);
+                runtimeClasspathElements.addAll(cached);
+                return;
+            }
+        }
+
+        // a single collect request lets the repository system mediate versions across all dependencies (nearest
+        // wins) and resolve shared transitive artifacts only once
+        final CollectRequest collectRequest = new CollectRequest();
+        for (Dependency dependency : dependencies) {
+            collectRequest.addDependency(toAetherDependency(dependency));
+        }
+        collectRequest.setRepositories(remoteProjectRepositories);
+        final DependencyRequest dependencyRequest =
+                new DependencyRequest(collectRequest, DependencyFilterUtils.classpathFilter(Artifact.SCOPE_RUNTIME));
+
+        final List<String> resolvedElements = new ArrayList<>();
+        boolean cacheable = !hasChangingVersion(dependencies);
+        try {
+            final DependencyResult result = repositorySystem.resolveDependencies(repositorySystemSession, dependencyRequest);
+            if (!result.getCollectExceptions().isEmpty()) {
+                throw new MojoExecutionException("Failed to resolve dependencies for: " + dependencies);
+            }
+            for (ArtifactResult resolvedArtifactResult : result.getArtifactResults()) {
+                resolvedElements.add(resolvedArtifactResult.getArtifact().getFile().getAbsolutePath());
+                cacheable &= !resolvedArtifactResult.getArtifact().isSnapshot();
+            }
+            cacheable &= !hasVersionRange(result.getRoot());
+        } catch (DependencyResolutionException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        if (cache != null) {
+            // a SNAPSHOT or range may resolve differently once the remote repository changes, which no local file shows
+            if (cacheable) {
+                cache.put(cacheKey, resolvedElements);
+            } else {
+                cache.remove(cacheKey);
+            }
+        }
+        runtimeClasspathElements.addAll(resolvedElements);
+    }
+
+    /**
+     * @return whether a dependency is declared with a SNAPSHOT version or a version range
+     */
+    private static boolean hasChangingVersion(List<Dependency> dependencies) {
+        for (Dependency dependency : dependencies) {
+            final String version = Strings.nullToEmpty(dependency.getVersion());
+            if (version.endsWith(Artifact.SNAPSHOT_VERSION) || version.startsWith("[") || version.startsWith("(")
+                    || Artifact.LATEST_VERSION.equals(version) || Artifact.RELEASE_VERSION.equals(version)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the version of any node of the resolved dependency graph has been chosen from a range
+     */
+    private static boolean hasVersionRange(DependencyNode node) {
+        if (node == null) {
+            return false;
+        }
+        if (node.getVersionConstraint() != null && node.getVersionConstraint().getRange() != null) {
+            return true;
+        }
+        for (DependencyNode child : node.getChildren()) {
+            if (hasVersionRange(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String classpathCacheKey(List<Dependency> dependencies) {
+        final StringBuilder sb = new StringBuilder(Artifact.SCOPE_RUNTIME);
+        for (Dependency dependency : dependencies) {
+            sb.append('|').append(dependency.getGroupId()).append(':').append(dependency.getArtifactId())
+                    .append(':').append(dependency.getType()).append(':').append(Strings.nullToEmpty(dependency.getClassifier()))
+                    .append(':').append(dependency.getVersion());
+            final List<String> exclusions = new ArrayList<>();
+            for (Exclusion exclusion : dependency.getExclusions()) {
+                exclusions.add(exclusion.getGroupId() + ":" + exclusion.getArtifactId());
+            }
+            Collections.sort(exclusions);
+            sb.append(exclusions);
+        }
+        if (remoteProjectRepositories != null) {
+            for (RemoteRepository repository : remoteProjectRepositories) {
+                sb.append('|').append(repository.getId()).append('=').append(repository.getUrl());
+            }
+        }
+        return sb.toString();
+    }
+
+    private static org.eclipse.aether.graph.Dependency toAetherDependency(Dependency dependency) {
+        final org.eclipse.aether.artifact.Artifact artifact = new DefaultArtifact(
+                dependency.getGroupId(),
+                dependency.getArtifactId(),
+                dependency.getClassifier(),
+                dependency.getType(),
+                dependency.getVersion());
+        final org.eclipse.aether.graph.Dependency aetherDependency =
+                new org.eclipse.aether.graph.Dependency(artifact, Artifact.SCOPE_RUNTIME);
+        return aetherDependency.setExclusions(Sets.newHashSet(Iterables.transform(dependency.getExclusions(),
+                new Function<Exclusion, org.eclipse.aether.graph.Exclusion>() {
+                    @Override
+                    public org.eclipse.aether.graph.Exclusion apply(Exclusion input) {
+                        return new org.eclipse.aether.graph.Exclusion(input.getGroupId(), input.getArtifactId(), "*", "*");
+                    }
+                })));
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Application class data sharing (AppCDS) archives for Java processes. Archives are named after the process and a
+ * hash of the Java installation and of every classpath element, including its size and modification time, so any
+ * change of the classpath leads to a new archive; files of the same process with a different hash are deleted.
+ * <p>
+ * The first launch with a given classpath records the classes it loads ({@code -XX:DumpLoadedClassList}), which
+ * works however the process is stopped. The next launch turns that list into an archive with a short
+ * {@code -Xshare:dump} run of the same Java installation, bounded by a timeout, and from then on the archive is mapped
+ * with {@code -XX:SharedArchiveFile}. Requires a JDK 10 or later launcher and a classpath made of jars only.
+ *
+ * @author Thuan Luong
+ */
+final class AppCdsArchives {
+
+    private static final String CLASS_LIST = ".classlist";
+
+    private static final String ARCHIVE = ".jsa";
+
+    private static final List<String> CLASSPATH_OPTIONS = Arrays.asList("-cp", "-classpath", "--class-path");
+
+    private AppCdsArchives() {
+    }
+
+    /**
+     * @param commandArguments the arguments of the process, which must contain its classpath option
+     * @return the JVM options which make the process record its classes or use its archive
+     */
+    static List<String> jvmOptions(File archiveDirectory, String processName, String javaExecutable,
+                                   Collection<String> classpathElements, List<String> commandArguments,
+                                   long dumpTimeoutMillis, Log log) {
+        final String classpath = classpathOption(commandArguments);
+        if (classpath == null) {
+            log.warn("Process '" + processName + "' has no classpath option, not using a CDS archive");
+            return Collections.emptyList();
+        }
+        for (String element : classpathElements) {
+            final String[] children = new File(element).list();
+            if (children != null && children.length > 0) {
+                log.warn("Process '" + processName + "' has directory " + element
+                        + " on its classpath, which CDS archives cannot contain, not using a CDS archive");
+                return Collections.emptyList();
+            }
+        }
+        final String baseName = processName + "-" + hash(javaExecutable, classpathElements);
+        final File classList = new File(archiveDirectory, baseName + CLASS_LIST);
+        final File archive = new File(archiveDirectory, baseName + ARCHIVE);
+        deleteStaleFiles(archiveDirectory, processName, baseName, log);
+
+        if (!archive.isFile() && classList.isFile() && classList.length() > 0) {
+            dumpArchive(javaExecutable, classpath, classList, archive, dumpTimeoutMillis, log);
+        }
+        if (archive.isFile() && archive.length() > 0) {
+            log.info("Using CDS archive " + archive + " for process: " + processName);
+            return Collections.singletonList("-XX:SharedArchiveFile=" + archive.getAbsolutePath());
+        }
+        if (!archiveDirectory.isDirectory() && !archiveDirectory.mkdirs()) {
+            log.warn("Could not create CDS archive directory " + archiveDirectory);
+            return Collections.emptyList();
+        }
+        log.info("Recording loaded classes of process '" + processName + "' for a CDS archive in " + classList);
+        return Collections.singletonList("-XX:DumpLoadedClassList=" + classList.getAbsolutePath());
+    }
+
+    private static String classpathOption(List<String> commandArguments) {
+        for (int i = 0; i < commandArguments.size() - 1; i++) {
+            if (CLASSPATH_OPTIONS.contains(commandArguments.get(i))) {
+                return commandArguments.get(i + 1);
+            }
+        }
+        return null;
+    }
+
+    private static void dumpArchive(String javaExecutable, String classpath, File classList, File archive,
+                                    long timeoutMillis, Log log) {
+        log.info("Creating CDS archive " + archive);
+        final ProcessBuilder pb = new ProcessBuilder(javaExecutable, "-Xshare:dump",
+                "-XX:SharedClassListFile=" + classList.getAbsolutePath(),
+                "-XX:SharedArchiveFile=" + archive.getAbsolutePath(),
+                "-cp", classpath);
+        pb.redirectErrorStream(true);
+        Path output = null;
+        Process process = null;
+        try {
+            // written to a file, as reading a pipe would block beyond the timeout on a hung run
+            output = Files.createTempFile("exec-process-cds", ".log");
+            pb.redirectOutput(output.toFile());
+            process = pb.start();
+            if (!process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("Creating CDS archive " + archive + " took longer than " + timeoutMillis
+                        + " ms, launching without it");
+                process.destroyForcibly();
+                archive.delete();
+                return;
+            }
+            final int exitCode = process.exitValue();
+            if (exitCode != 0) {
+                log.warn("Could not create CDS archive " + archive + ", exit code " + exitCode + ":\n"
+                        + new String(Files.readAllBytes(output), Charsets.UTF_8));
+                archive.delete();
+            } else if (log.isDebugEnabled()) {
+                log.debug(new String(Files.readAllBytes(output), Charsets.UTF_8));
+            }
+        } catch (IOException e) {
+            log.warn("Could not create CDS archive " + archive + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            process.destroyForcibly();
+            archive.delete();
+        } finally {
+            if (output != null) {
+                try {
+                    Files.deleteIfExists(output);
+                } catch (IOException e) {
+                    log.debug("Could not delete " + output + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static String hash(String javaExecutable, Collection<String> classpathElements) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        final File executable = canonical(new File(javaExecutable));
+        putFingerprint(hasher, executable);
+        // the runtime image changes with every JDK update even when the launcher does not
+        final File home = executable.getParentFile() != null ? executable.getParentFile().getParentFile() : null;
+        if (home != null) {
+            putFingerprint(hasher, new File(home, "lib/modules"));
+        }
+        for (String element : classpathElements) {
+            putFingerprint(hasher, new File(element));
+        }
+        return hasher.hash().toString().substring(0, 16);
+    }
+
+    private static void putFingerprint(Hasher hasher, File file) {
+        hasher.putString(file.getAbsolutePath(), Charsets.UTF_8)
+                .putLong(file.length())
+                .putLong(file.lastModified());
+    }
+
+    private static File canonical(File file) {
+        try {
+            return file.getCanonicalFile();
+        } catch (IOException e) {
+            return file.getAbsoluteFile();
+        }
+    }
+
+    private static void deleteStaleFiles(File archiveDirectory, String processName, String currentBaseName, Log log) {
+        final File[] files = archiveDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            final String fileName = file.getName();
+            if (!fileName.startsWith(processName + "-") || fileName.startsWith(currentBaseName + ".")) {
+                continue;
+            }
+            final String suffix = fileName.substring(processName.length() + 1);
+            // only <name>-<16 hex digits>.<extension>, not the files of a process whose name extends this one
+            if (suffix.matches("[0-9a-f]{16}\\.(classlist|jsa)")) {
+                log.debug("Deleting stale CDS file " + file);
+                if (!file.delete()) {
+                    log.warn("Could not delete stale CDS file " + file);
+                }
+            }
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package solutions.tal.tools.maven.plugins.exec;
 
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 
 /**
@@ -23,6 +24,6 @@ import org.apache.maven.plugin.logging.Log;
  */
 interface ApplicationReadiness {
 
-    void waitForReadiness(Log log, String processName);
+    void waitForReadiness(Log log, ProcessExecutor process) throws MojoExecutionException;
 
 }
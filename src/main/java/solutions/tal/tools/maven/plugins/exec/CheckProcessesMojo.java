@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fails the build if a process started by this module, or a shared process it uses, exited unexpectedly or failed
+ * its health check. Bound after or between test executions, it stops the build before further tests wait for a dead
+ * process.
+ *
+ * @author Thuan Luong
+ */
+@Mojo(name = "check", defaultPhase = LifecyclePhase.INTEGRATION_TEST, threadSafe = true)
+public class CheckProcessesMojo extends AbstractProcessExecutorMojo {
+
+    @Override
+    public void execute() throws MojoFailureException {
+        final List<ProcessExecutor> processExecutors = new ArrayList<>(
+                PluginExecutionStateHolder.getProcesses(getPluginContext()));
+        for (String fingerprint : PluginExecutionStateHolder.getSharedProcesses(getPluginContext())) {
+            final ProcessExecutor sharedProcess = SharedProcessRegistry.get(fingerprint);
+            if (sharedProcess != null) {
+                processExecutors.add(sharedProcess);
+            }
+        }
+        failOnProcessFailures(processExecutors);
+        getLog().info("None of the " + processExecutors.size() + " processes has failed");
+    }
+}
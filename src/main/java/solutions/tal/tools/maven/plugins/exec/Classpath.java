@@ -16,8 +16,26 @@
 
 package solutions.tal.tools.maven.plugins.exec;
 
+import java.io.File;
+import java.util.Iterator;
+
 /**
  * @author Thuan Luong
  */
 public final class Classpath {
+
+    /**
+     * Joins classpath elements with the platform path separator.
+     */
+    static String join(Iterable<String> classpathElements) {
+        final StringBuilder sb = new StringBuilder();
+        final Iterator<String> it = classpathElements.iterator();
+        while (it.hasNext()) {
+            sb.append(it.next());
+            if (it.hasNext()) {
+                sb.append(File.pathSeparatorChar);
+            }
+        }
+        return sb.toString();
+    }
 }
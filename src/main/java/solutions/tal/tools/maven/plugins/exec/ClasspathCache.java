@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * On-disk cache of resolved classpaths. Entries are stored as one properties file per key, named after the hash of
+ * the key. An entry is only returned while every file it lists still has the size and modification time recorded
+ * when the entry was written, so re-installed or re-downloaded artifacts invalidate it. Classpaths involving SNAPSHOTs
+ * or version ranges, which may change in a remote repository without any local file changing, are not cached.
+ *
+ * @author Thuan Luong
+ */
+final class ClasspathCache {
+
+    private static final String KEY = "key";
+
+    private static final String SIZE = "size";
+
+    private static final String ELEMENT = "element.";
+
+    private static final String FINGERPRINT = "fingerprint.";
+
+    private final File directory;
+
+    private final Log log;
+
+    ClasspathCache(File directory, Log log) {
+        this.directory = directory;
+        this.log = log;
+    }
+
+    /**
+     * @return the cached classpath elements for the key, or {@code null} if there is no valid entry
+     */
+    List<String> get(String key) {
+        final File file = fileFor(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            properties.load(in);
+        } catch (IOException | IllegalArgumentException e) {
+            log.debug("Ignoring unreadable classpath cache entry " + file + ": " + e.getMessage());
+            return null;
+        }
+        if (!key.equals(properties.getProperty(KEY))) {
+            return null;
+        }
+        final int size;
+        try {
+            size = Integer.parseInt(properties.getProperty(SIZE, "-1"));
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring corrupt classpath cache entry " + file + ": " + e.getMessage());
+            return null;
+        }
+        if (size < 0) {
+            return null;
+        }
+        final List<String> elements = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final String element = properties.getProperty(ELEMENT + i);
+            if (element == null || !fingerprint(new File(element)).equals(properties.getProperty(FINGERPRINT + i))) {
+                log.debug("Classpath cache entry " + file + " is stale, " + element + " has changed");
+                return null;
+            }
+            elements.add(element);
+        }
+        return elements;
+    }
+
+    void put(String key, List<String> elements) {
+        final Properties properties = new Properties();
+        properties.setProperty(KEY, key);
+        properties.setProperty(SIZE, String.valueOf(elements.size()));
+        for (int i = 0; i < elements.size(); i++) {
+            final String element = elements.get(i);
+            properties.setProperty(ELEMENT + i, element);
+            properties.setProperty(FINGERPRINT + i, fingerprint(new File(element)));
+        }
+        final File file = fileFor(key);
+        try {
+            Files.createDirectories(directory.toPath());
+            // write to a temporary file first so that concurrent builds never read a partial entry
+            final Path tmp = Files.createTempFile(directory.toPath(), file.getName(), ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, null);
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Could not write classpath cache entry " + file + ": " + e.getMessage());
+        }
+    }
+
+    void remove(String key) {
+        try {
+            Files.deleteIfExists(fileFor(key).toPath());
+        } catch (IOException e) {
+            log.debug("Could not delete classpath cache entry for " + key + ": " + e.getMessage());
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(directory, Hashing.sha1().hashString(key, Charsets.UTF_8).toString() + ".properties");
+    }
+
+    private static String fingerprint(File file) {
+        return file.exists() ? file.length() + ":" + file.lastModified() : "missing";
+    }
+}
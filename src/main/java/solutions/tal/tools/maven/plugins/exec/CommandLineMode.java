@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+/**
+ * How the command line of a process is handed to the operating system.
+ *
+ * @author Thuan Luong
+ */
+public enum CommandLineMode {
+
+    /**
+     * All arguments, including the classpath, are passed on the command line.
+     */
+    INLINE,
+
+    /**
+     * System properties and arguments are written to a Java launcher argument file which is passed as
+     * {@code @<file>}. Requires a Java 9 or later launcher.
+     */
+    ARGUMENT_FILE,
+
+    /**
+     * Classpath arguments are replaced by a pathing jar whose manifest {@code Class-Path} lists the classpath elements.
+     */
+    MANIFEST_JAR
+}
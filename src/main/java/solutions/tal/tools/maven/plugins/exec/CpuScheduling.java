@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.base.Joiner;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Pins processes to CPUs and lowers their scheduling priority by launching them through {@code taskset} and
+ * {@code nice}, which replace themselves with the process and so keep its PID.
+ * <p>
+ * Processes asking for a number of CPUs get the least used CPUs among those the Maven JVM may run on, highest first,
+ * so that processes started by the build are spread over disjoint CPUs as long as there are enough of them. The lowest
+ * CPU counts as used by Maven and its test forks from the start. CPUs are handed back once their process has exited.
+ *
+ * @author Thuan Luong
+ */
+final class CpuScheduling {
+
+    private static final TreeMap<Integer, Integer> USERS = new TreeMap<>();
+
+    private CpuScheduling() {
+    }
+
+    /**
+     * Allocates {@code count} CPUs, see {@link #release(Collection)}.
+     */
+    static synchronized List<Integer> allocate(int count, Log log) {
+        if (USERS.isEmpty()) {
+            for (Integer cpu : allowedCpus()) {
+                USERS.put(cpu, 0);
+            }
+            USERS.put(USERS.firstKey(), 1);
+        }
+        final List<Integer> candidates = new ArrayList<>(USERS.keySet());
+        Collections.sort(candidates, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                final int byUsers = Integer.compare(USERS.get(first), USERS.get(second));
+                return byUsers != 0 ? byUsers : Integer.compare(second, first);
+            }
+        });
+        final List<Integer> allocated = new ArrayList<>(new TreeSet<>(
+                candidates.subList(0, Math.min(count, candidates.size()))));
+        boolean shared = count > candidates.size();
+        for (Integer cpu : allocated) {
+            shared |= USERS.get(cpu) > 0;
+            USERS.put(cpu, USERS.get(cpu) + 1);
+        }
+        if (shared) {
+            log.warn(String.format("Not enough free CPUs for %d more, sharing CPUs %s with other processes", count,
+                    Joiner.on(',').join(allocated)));
+        }
+        return allocated;
+    }
+
+    static synchronized void release(Collection<Integer> cpus) {
+        for (Integer cpu : cpus) {
+            USERS.put(cpu, Math.max(0, USERS.get(cpu) - 1));
+        }
+    }
+
+    /**
+     * @param cpus      CPU list as understood by {@code taskset -c}, e.g. {@code 2-3,6}, or {@code null}
+     * @param niceness  increment of the nice level, or {@code null} to keep the one of Maven
+     * @return the arguments to put in front of the command line, empty when the tools are not available
+     */
+    static List<String> commandPrefix(String cpus, Integer niceness, Log log) {
+        final List<String> prefix = new ArrayList<>();
+        if (cpus == null && niceness == null) {
+            return prefix;
+        }
+        if (System.getProperty("os.name").toLowerCase(Locale.US).contains("windows")) {
+            log.warn("CPU affinity and nice level are not supported on Windows, ignoring them");
+            return prefix;
+        }
+        if (cpus != null) {
+            final String taskset = findExecutable("taskset");
+            if (taskset != null) {
+                prefix.add(taskset);
+                prefix.add("-c");
+                prefix.add(cpus);
+            } else {
+                log.warn("taskset not found on the PATH, ignoring the CPU affinity " + cpus);
+            }
+        }
+        if (niceness != null) {
+            final String nice = findExecutable("nice");
+            if (nice != null) {
+                prefix.add(nice);
+                prefix.add("-n");
+                prefix.add(String.valueOf(niceness));
+            } else {
+                log.warn("nice not found on the PATH, ignoring the nice level " + niceness);
+            }
+        }
+        return prefix;
+    }
+
+    /**
+     * @return the CPUs the Maven JVM may run on, from {@code /proc} where available
+     */
+    private static List<Integer> allowedCpus() {
+        final List<Integer> cpus = new ArrayList<>();
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.US_ASCII)) {
+                if (line.startsWith("Cpus_allowed_list:")) {
+                    for (String range : line.substring(line.indexOf(':') + 1).trim().split(",")) {
+                        final String[] bounds = range.trim().split("-");
+                        final int last = Integer.parseInt(bounds[bounds.length - 1]);
+                        for (int cpu = Integer.parseInt(bounds[0]); cpu <= last; cpu++) {
+                            cpus.add(cpu);
+                        }
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            cpus.clear();
+        }
+        if (cpus.isEmpty()) {
+            for (int cpu = 0; cpu < Runtime.getRuntime().availableProcessors(); cpu++) {
+                cpus.add(cpu);
+            }
+        }
+        return cpus;
+    }
+
+    /**
+     * @return the absolute path of the named executable on the {@code PATH}, or {@code null} if there is none
+     */
+    static String findExecutable(String name) {
+        final String path = System.getenv("PATH");
+        if (path == null) {
+            return null;
+        }
+        for (String directory : path.split(File.pathSeparator)) {
+            final File file = new File(directory, name);
+            if (file.isFile() && file.canExecute()) {
+                return file.getAbsolutePath();
+            }
+        }
+        return null;
+    }
+}
@@ -38,9 +38,9 @@ public class FixedWaitTimeReadinessCheck implements ApplicationReadiness {
     }
 
     @Override
-    public void waitForReadiness(Log log, String processName) {
+    public void waitForReadiness(Log log, ProcessExecutor process) {
         try {
-            log.info(String.format("Pausing build for %d %s to wait for process '%s' to complete startup", time, timeUnit.name(), processName));
+            log.info(String.format("Pausing build for %d %s to wait for process '%s' to complete startup", time, timeUnit.name(), process.getName()));
             timeUnit.sleep(time);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
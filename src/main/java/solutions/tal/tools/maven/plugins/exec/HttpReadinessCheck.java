@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.io.ByteStreams;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * Declares a process ready once an HTTP GET on {@code url} answers with {@code expectedStatus} and, when
+ * {@code expectedBodyPattern} is set, a response body containing a match of that regular expression. The
+ * {@code @{instance}} placeholder in {@code url} is replaced with the index of the replica being checked.
+ *
+ * @author Thuan Luong
+ */
+public class HttpReadinessCheck extends AbstractPollingReadinessCheck {
+
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    private String url;
+
+    private int expectedStatus = HttpURLConnection.HTTP_OK;
+
+    private String expectedBodyPattern;
+
+    private int connectTimeoutMillis = 1000;
+
+    private int readTimeoutMillis = 2000;
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public void setExpectedStatus(int expectedStatus) {
+        this.expectedStatus = expectedStatus;
+    }
+
+    public void setExpectedBodyPattern(String expectedBodyPattern) {
+        this.expectedBodyPattern = expectedBodyPattern;
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public void setReadTimeoutMillis(int readTimeoutMillis) {
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    @Override
+    String describe(ProcessExecutor process) {
+        return "HTTP " + expectedStatus + " from " + ProcessInstances.resolve(url, process.getInstance());
+    }
+
+    @Override
+    Probe createProbe(final Log log, ProcessExecutor process) throws MojoExecutionException {
+        final String url = ProcessInstances.resolve(this.url, process.getInstance());
+        final URL target;
+        try {
+            target = new URL(url);
+        } catch (MalformedURLException e) {
+            throw new MojoExecutionException("Invalid readiness URL: " + url, e);
+        }
+        final Pattern bodyPattern = expectedBodyPattern != null ? Pattern.compile(expectedBodyPattern) : null;
+        return new Probe() {
+            @Override
+            public boolean isReady() {
+                HttpURLConnection connection = null;
+                try {
+                    connection = (HttpURLConnection) target.openConnection();
+                    connection.setRequestMethod("GET");
+                    connection.setConnectTimeout(connectTimeoutMillis);
+                    connection.setReadTimeout(readTimeoutMillis);
+                    connection.setUseCaches(false);
+                    final int status = connection.getResponseCode();
+                    if (status != expectedStatus) {
+                        if (log.isDebugEnabled()) {
+                            log.debug(String.format("GET %s returned %d, expecting %d", url, status, expectedStatus));
+                        }
+                        return false;
+                    }
+                    return bodyPattern == null || bodyPattern.matcher(readBody(connection)).find();
+                } catch (IOException e) {
+                    if (log.isDebugEnabled()) {
+                        log.debug(String.format("GET %s failed: %s", url, e.getMessage()));
+                    }
+                    return false;
+                } finally {
+                    if (connection != null) {
+                        connection.disconnect();
+                    }
+                }
+            }
+        };
+    }
+
+    private static String readBody(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getInputStream()) {
+            return new String(ByteStreams.toByteArray(ByteStreams.limit(in, MAX_BODY_BYTES)), StandardCharsets.UTF_8);
+        }
+    }
+}
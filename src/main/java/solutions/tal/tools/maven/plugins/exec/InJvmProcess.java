@@ -0,0 +1,255 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * A Java main class run inside the Maven JVM, presented as a {@link Process} so that it is managed like any forked
+ * process. The class is loaded by its own class loader on top of the platform class loader, so neither Maven nor
+ * this plugin are visible to it, and runs on its own thread group. The "process" is alive as long as a non-daemon
+ * thread of that group is.
+ * <p>
+ * Stopping calls the configured static no-argument shutdown method of the main class or, without one or if it
+ * fails, interrupts every thread of the group; killing always interrupts. The code shares the Maven JVM, so it must
+ * not call {@link System#exit(int)}, and its output goes to the console of the build.
+ *
+ * @author Thuan Luong
+ */
+final class InJvmProcess extends Process {
+
+    private static final int EXIT_FAILURE = 1;
+
+    private final String name;
+
+    private final ThreadGroup threadGroup;
+
+    private final URLClassLoader classLoader;
+
+    private final String shutdownMethod;
+
+    private final Log log;
+
+    private Class<?> mainClass;
+
+    private volatile int exitCode;
+
+    private InJvmProcess(String name, URLClassLoader classLoader, String shutdownMethod, final Log log) {
+        this.name = name;
+        this.classLoader = classLoader;
+        this.shutdownMethod = shutdownMethod;
+        this.log = log;
+        this.threadGroup = new ThreadGroup("exec-process-" + name) {
+            @Override
+            public void uncaughtException(Thread thread, Throwable e) {
+                log.error("[" + InJvmProcess.this.name + "] Uncaught exception in thread " + thread.getName(), e);
+            }
+        };
+    }
+
+    /**
+     * Loads {@code mainClassName} from the given classpath and runs its {@code main} method with {@code args}.
+     */
+    static InJvmProcess start(String name, String mainClassName, Collection<String> classpathElements,
+                              final List<String> args, String shutdownMethod, Log log) throws MojoExecutionException {
+        final List<URL> urls = new ArrayList<>();
+        for (String element : classpathElements) {
+            try {
+                urls.add(new File(element).toURI().toURL());
+            } catch (MalformedURLException e) {
+                throw new MojoExecutionException("Invalid classpath element " + element, e);
+            }
+        }
+        final URLClassLoader classLoader = new URLClassLoader(urls.toArray(new URL[0]),
+                ClassLoader.getPlatformClassLoader());
+        final InJvmProcess process = new InJvmProcess(name, classLoader, shutdownMethod, log);
+        final Method main;
+        try {
+            process.mainClass = Class.forName(mainClassName, false, classLoader);
+            main = process.mainClass.getMethod("main", String[].class);
+            if (shutdownMethod != null) {
+                process.findShutdownMethod();
+            }
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            process.closeClassLoader();
+            throw new MojoExecutionException("Cannot run " + mainClassName + " of process '" + name + "': " + e, e);
+        }
+
+        final Thread mainThread = new Thread(process.threadGroup, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    main.invoke(null, (Object) args.toArray(new String[0]));
+                } catch (InvocationTargetException e) {
+                    process.exitCode = EXIT_FAILURE;
+                    process.threadGroup.uncaughtException(Thread.currentThread(), e.getCause());
+                } catch (IllegalAccessException e) {
+                    process.exitCode = EXIT_FAILURE;
+                    process.threadGroup.uncaughtException(Thread.currentThread(), e);
+                }
+            }
+        }, name + "-main");
+        mainThread.setContextClassLoader(classLoader);
+        mainThread.start();
+        return process;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        };
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        Thread thread;
+        while ((thread = liveThread()) != null) {
+            thread.join();
+        }
+        closeClassLoader();
+        return exitCode;
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Thread thread;
+        while ((thread = liveThread()) != null) {
+            final long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0) {
+                return false;
+            }
+            thread.join(remainingMillis);
+        }
+        closeClassLoader();
+        return true;
+    }
+
+    @Override
+    public int exitValue() {
+        if (liveThread() != null) {
+            throw new IllegalThreadStateException("process '" + name + "' has not exited");
+        }
+        return exitCode;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return liveThread() != null;
+    }
+
+    @Override
+    public void destroy() {
+        if (shutdownMethod != null) {
+            final Thread current = Thread.currentThread();
+            final ClassLoader contextClassLoader = current.getContextClassLoader();
+            current.setContextClassLoader(classLoader);
+            try {
+                findShutdownMethod().invoke(null);
+                return;
+            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                log.warn("Shutdown method " + shutdownMethod + " of process '" + name + "' failed, interrupting it: "
+                        + (e instanceof InvocationTargetException ? e.getCause() : e));
+            } finally {
+                current.setContextClassLoader(contextClassLoader);
+            }
+        }
+        threadGroup.interrupt();
+    }
+
+    @Override
+    public Process destroyForcibly() {
+        threadGroup.interrupt();
+        return this;
+    }
+
+    @Override
+    public boolean supportsNormalTermination() {
+        return shutdownMethod != null;
+    }
+
+    @Override
+    public Stream<ProcessHandle> children() {
+        return Stream.empty();
+    }
+
+    @Override
+    public Stream<ProcessHandle> descendants() {
+        return Stream.empty();
+    }
+
+    private Method findShutdownMethod() throws NoSuchMethodException {
+        final Method method = mainClass.getMethod(shutdownMethod);
+        if (!Modifier.isStatic(method.getModifiers())) {
+            throw new NoSuchMethodException(shutdownMethod + " of " + mainClass.getName() + " is not static");
+        }
+        return method;
+    }
+
+    /**
+     * @return a live non-daemon thread of the process, or {@code null} if it has exited
+     */
+    private Thread liveThread() {
+        final Thread[] threads = new Thread[threadGroup.activeCount() + 16];
+        final int count = threadGroup.enumerate(threads);
+        for (int i = 0; i < count; i++) {
+            if (threads[i].isAlive() && !threads[i].isDaemon()) {
+                return threads[i];
+            }
+        }
+        return null;
+    }
+
+    private void closeClassLoader() {
+        try {
+            classLoader.close();
+        } catch (IOException e) {
+            log.debug("Could not close class loader of process '" + name + "': " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanException;
+import javax.management.MBeanServerConnection;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Optional;
+
+/**
+ * Declares a Java process ready once an MBean attribute, or the result of a no-argument MBean operation, equals
+ * {@code expectedValue}. The JVM of the process, or of one of its descendants when the process is a launcher script,
+ * is located by PID and attached to through the Attach API, which starts its local JMX agent if necessary. A process
+ * running inside the Maven JVM is checked through the platform MBean server.
+ * <p>
+ * The check needs the Maven JVM to be a JDK, and the process to run under the same user with performance data
+ * enabled. The {@code @{instance}} placeholder in {@code objectName} is replaced with the index of the replica being
+ * checked.
+ *
+ * @author Thuan Luong
+ */
+public class JmxReadinessCheck extends AbstractPollingReadinessCheck {
+
+    private String objectName;
+
+    private String attribute;
+
+    private String operation;
+
+    private String expectedValue = "true";
+
+    public void setObjectName(String objectName) {
+        this.objectName = objectName;
+    }
+
+    public void setAttribute(String attribute) {
+        this.attribute = attribute;
+    }
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    public void setExpectedValue(String expectedValue) {
+        this.expectedValue = expectedValue;
+    }
+
+    @Override
+    String describe(ProcessExecutor process) {
+        return String.format("%s %s of MBean %s to be %s", attribute != null ? "attribute" : "operation",
+                attribute != null ? attribute : operation + "()",
+                ProcessInstances.resolve(objectName, process.getInstance()), expectedValue);
+    }
+
+    @Override
+    Probe createProbe(Log log, ProcessExecutor process) throws MojoExecutionException {
+        if (objectName == null) {
+            throw new MojoExecutionException("The JMX readiness check needs an objectName");
+        }
+        if ((attribute == null) == (operation == null)) {
+            throw new MojoExecutionException("The JMX readiness check needs either an attribute or an operation");
+        }
+        final String resolvedName = ProcessInstances.resolve(objectName, process.getInstance());
+        try {
+            return new MBeanProbe(log, process, new ObjectName(resolvedName));
+        } catch (MalformedObjectNameException e) {
+            throw new MojoExecutionException("Invalid MBean name: " + resolvedName, e);
+        }
+    }
+
+    /**
+     * Keeps the JMX connection to the process between two attempts.
+     */
+    private final class MBeanProbe implements Probe {
+
+        private final Log log;
+
+        private final ProcessExecutor process;
+
+        private final ObjectName mbeanName;
+
+        private JMXConnector connector;
+
+        private MBeanServerConnection connection;
+
+        private boolean closed;
+
+        private MBeanProbe(Log log, ProcessExecutor process, ObjectName mbeanName) {
+            this.log = log;
+            this.process = process;
+            this.mbeanName = mbeanName;
+        }
+
+        @Override
+        public synchronized boolean isReady() throws MojoExecutionException {
+            if (closed) {
+                return false;
+            }
+            try {
+                if (connection == null && !connect()) {
+                    return false;
+                }
+                final Object value = attribute != null
+                        ? connection.getAttribute(mbeanName, attribute)
+                        : connection.invoke(mbeanName, operation, new Object[0], new String[0]);
+                if (expectedValue.equals(String.valueOf(value))) {
+                    return true;
+                }
+                debug(String.format("%s is %s, expecting %s", describe(process), value, expectedValue));
+                return false;
+            } catch (InstanceNotFoundException e) {
+                debug("MBean " + mbeanName + " is not registered yet");
+                return false;
+            } catch (MBeanException e) {
+                debug("Operation " + operation + " of MBean " + mbeanName + " failed: " + e.getCause());
+                return false;
+            } catch (JMException e) {
+                throw new MojoExecutionException("Cannot read " + describe(process) + ": " + e.getMessage(), e);
+            } catch (IOException e) {
+                debug("JMX connection to process '" + process.getName() + "' failed: " + e.getMessage());
+                disconnect();
+                return false;
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            disconnect();
+        }
+
+        private boolean connect() throws IOException, MojoExecutionException {
+            if (process.getPid() < 0) {
+                connection = ManagementFactory.getPlatformMBeanServer();
+                return true;
+            }
+            final String address = localConnectorAddress();
+            if (address == null) {
+                return false;
+            }
+            connector = JMXConnectorFactory.connect(new JMXServiceURL(address));
+            connection = connector.getMBeanServerConnection();
+            return true;
+        }
+
+        private String localConnectorAddress() throws MojoExecutionException {
+            final Optional<ProcessHandle> handle = ProcessHandle.of(process.getPid());
+            if (!handle.isPresent()) {
+                return null;
+            }
+            try {
+                return LocalJmxAgents.start(handle.get());
+            } catch (IOException e) {
+                debug("Cannot attach to process '" + process.getName() + "' yet: " + e.getMessage());
+                return null;
+            } catch (LinkageError e) {
+                throw new MojoExecutionException("The JMX readiness check needs Maven to run on a JDK with the "
+                        + "jdk.attach module", e);
+            }
+        }
+
+        private void disconnect() {
+            if (connector != null) {
+                try {
+                    connector.close();
+                } catch (IOException e) {
+                    debug("Closing the JMX connection to process '" + process.getName() + "' failed: " + e.getMessage());
+                }
+            }
+            connector = null;
+            connection = null;
+        }
+
+        private void debug(String message) {
+            if (log.isDebugEnabled()) {
+                log.debug(message);
+            }
+        }
+    }
+}
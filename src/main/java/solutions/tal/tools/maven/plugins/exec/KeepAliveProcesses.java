@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * State files of processes left running by {@code stop-all} so that the next build can reattach to them instead of
+ * paying for their startup again. A state file records the process and a fingerprint of its configuration, which
+ * also covers the size and modification time of every file on its classpath, so that a process is only reused while
+ * neither its configuration nor its code have changed. Otherwise it is killed together with its descendants and
+ * started afresh.
+ *
+ * @author Thuan Luong
+ */
+final class KeepAliveProcesses {
+
+    private static final String SUFFIX = ".keep-alive";
+
+    private KeepAliveProcesses() {
+    }
+
+    /**
+     * @return the state file of the named process of a project, distinct for every checkout of the project as the
+     * directory is usually shared by all builds on the machine
+     */
+    static File stateFile(File directory, String projectKey, File baseDir, String name) {
+        final String checkout = Hashing.sha256().hashString(String.valueOf(baseDir.getAbsoluteFile()), Charsets.UTF_8)
+                .toString().substring(0, 12);
+        return new File(directory,
+                (projectKey + "." + checkout + "." + name).replaceAll("[^A-Za-z0-9._-]", "_") + SUFFIX);
+    }
+
+    /**
+     * @return the fingerprint of the configuration, the output file and the classpath of the process when started in
+     * {@code workingDir}
+     */
+    static String fingerprint(ProcessExecutor processExecutor, File workingDir) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(processExecutor.configurationFingerprint(), Charsets.UTF_8).putChar('\0');
+        hasher.putString(String.valueOf(workingDir), Charsets.UTF_8).putChar('\0');
+        hasher.putString(String.valueOf(processExecutor.getOutputFile()), Charsets.UTF_8).putChar('\0');
+        if (processExecutor.getClasspathElements() != null) {
+            for (String classpathElement : processExecutor.getClasspathElements()) {
+                stamp(hasher, new File(classpathElement));
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Looks up the process recorded in {@code stateFile}. A recorded process whose fingerprint differs from the given
+     * one is killed and the state file deleted.
+     *
+     * @return the recorded process, if it is still running with the given fingerprint
+     */
+    static Optional<ProcessHandle> find(File stateFile, String fingerprint, long gracePeriodMillis, Log log) {
+        final Properties properties = read(stateFile, log);
+        if (properties == null) {
+            return Optional.empty();
+        }
+        final Optional<ProcessHandle> process = PidFiles.find(properties, "pid", "startInstant");
+        if (process.isPresent() && fingerprint.equals(properties.getProperty("fingerprint"))) {
+            return process;
+        }
+        if (process.isPresent()) {
+            log.info(String.format("Configuration of process '%s' (pid %d) kept alive by an earlier build has changed, "
+                    + "restarting it", properties.getProperty("name"), process.get().pid()));
+            destroyTree(process.get(), gracePeriodMillis);
+        }
+        PidFiles.delete(stateFile);
+        return Optional.empty();
+    }
+
+    /**
+     * Kills the process recorded in {@code stateFile}, if it is still running, and deletes the file.
+     */
+    static void discard(File stateFile, long gracePeriodMillis, Log log) {
+        final Properties properties = read(stateFile, log);
+        if (properties == null) {
+            return;
+        }
+        final Optional<ProcessHandle> process = PidFiles.find(properties, "pid", "startInstant");
+        if (process.isPresent()) {
+            log.info(String.format("Stopping process '%s' (pid %d) kept alive by an earlier build",
+                    properties.getProperty("name"), process.get().pid()));
+            destroyTree(process.get(), gracePeriodMillis);
+        }
+        PidFiles.delete(stateFile);
+    }
+
+    static void record(File stateFile, String name, ProcessHandle process, String fingerprint) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty("name", name);
+        properties.setProperty("pid", String.valueOf(process.pid()));
+        properties.setProperty("startInstant", PidFiles.startInstant(process));
+        properties.setProperty("fingerprint", fingerprint);
+        Files.createDirectories(stateFile.getParentFile().toPath());
+        try (OutputStream out = Files.newOutputStream(stateFile.toPath())) {
+            properties.store(out, "exec-process-plugin");
+        }
+    }
+
+    private static Properties read(File stateFile, Log log) {
+        if (!stateFile.isFile()) {
+            return null;
+        }
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(stateFile.toPath())) {
+            properties.load(in);
+        } catch (IOException e) {
+            log.debug("Could not read keep-alive state file " + stateFile + ": " + e.getMessage());
+            return null;
+        }
+        return properties;
+    }
+
+    private static void destroyTree(ProcessHandle process, long gracePeriodMillis) {
+        final List<ProcessHandle> tree = new ArrayList<>(process.descendants().collect(Collectors.toList()));
+        tree.add(process);
+        PidFiles.destroyAll(tree, gracePeriodMillis);
+    }
+
+    /**
+     * Adds the size and modification time of a file, or of every file below a directory, to the hash.
+     */
+    private static void stamp(final Hasher hasher, File classpathElement) {
+        hasher.putString(classpathElement.getPath(), Charsets.UTF_8).putChar('\0');
+        if (!classpathElement.exists()) {
+            return;
+        }
+        // sorted, as the order in which a directory is walked is unspecified
+        final SortedMap<String, BasicFileAttributes> files = new TreeMap<>();
+        try {
+            Files.walkFileTree(classpathElement.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    files.put(file.toString(), attributes);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            // an unreadable element changes the hash on the next successful read
+            hasher.putString(String.valueOf(e), Charsets.UTF_8);
+        }
+        for (Map.Entry<String, BasicFileAttributes> file : files.entrySet()) {
+            hasher.putString(file.getKey(), Charsets.UTF_8).putChar('\0');
+            hasher.putLong(file.getValue().size()).putLong(file.getValue().lastModifiedTime().toMillis());
+        }
+    }
+}
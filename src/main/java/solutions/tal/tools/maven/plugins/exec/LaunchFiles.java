@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.base.Charsets;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Writes the files used to shorten long command lines, see {@link CommandLineMode}. Files are only rewritten when
+ * their content changes, so repeated launches with the same configuration reuse them untouched.
+ *
+ * @author Thuan Luong
+ */
+final class LaunchFiles {
+
+    private LaunchFiles() {
+    }
+
+    /**
+     * Writes the arguments to a Java launcher argument file, one quoted argument per line.
+     *
+     * @return {@code true} if the file was (re)written
+     */
+    static boolean writeArgumentFile(File file, List<String> arguments) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        for (String argument : arguments) {
+            sb.append('"').append(argument.replace("\\", "\\\\").replace("\"", "\\\"")).append('"').append('\n');
+        }
+        final byte[] content = sb.toString().getBytes(Charsets.UTF_8);
+        if (file.isFile() && Arrays.equals(content, Files.readAllBytes(file.toPath()))) {
+            return false;
+        }
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content);
+        return true;
+    }
+
+    /**
+     * Writes an otherwise empty jar whose manifest {@code Class-Path} references the given classpath elements.
+     *
+     * @return {@code true} if the jar was (re)written
+     */
+    static boolean writeManifestJar(File file, Collection<String> classpathElements) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        for (String element : classpathElements) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(new File(element).toURI().toASCIIString());
+        }
+        final String classPath = sb.toString();
+        if (file.isFile() && classPath.equals(readClassPath(file))) {
+            return false;
+        }
+
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.CLASS_PATH, classPath);
+        Files.createDirectories(file.getParentFile().toPath());
+        try (OutputStream out = new JarOutputStream(Files.newOutputStream(file.toPath()), manifest)) {
+            out.flush();
+        }
+        return true;
+    }
+
+    private static String readClassPath(File file) {
+        try (JarFile jarFile = new JarFile(file)) {
+            final Manifest manifest = jarFile.getManifest();
+            return manifest != null ? manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
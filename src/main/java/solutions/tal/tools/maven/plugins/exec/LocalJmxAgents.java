@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.sun.tools.attach.AttachNotSupportedException;
+import com.sun.tools.attach.VirtualMachine;
+import com.sun.tools.attach.VirtualMachineDescriptor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Starts the local JMX agent of a running JVM through the Attach API. Kept apart from its callers so that a Maven
+ * JVM without the {@code jdk.attach} module only fails when a JVM is actually attached to.
+ *
+ * @author Thuan Luong
+ */
+final class LocalJmxAgents {
+
+    private LocalJmxAgents() {
+    }
+
+    /**
+     * Attaches to the first JVM among the process and its descendants, e.g. the JVM started by a launcher script, and
+     * starts its local JMX agent unless it is running already. Only JVMs listed by the Attach API are attached to, as
+     * attaching signals the target process.
+     *
+     * @return the address of the local JMX agent, or {@code null} if none of the processes is an attachable JVM yet
+     */
+    static String start(ProcessHandle process) throws IOException {
+        final List<String> candidates = new ArrayList<>();
+        candidates.add(String.valueOf(process.pid()));
+        for (ProcessHandle descendant : process.descendants().collect(Collectors.toList())) {
+            candidates.add(String.valueOf(descendant.pid()));
+        }
+        final Set<String> jvms = new HashSet<>();
+        for (VirtualMachineDescriptor descriptor : VirtualMachine.list()) {
+            jvms.add(descriptor.id());
+        }
+        for (String candidate : candidates) {
+            if (jvms.contains(candidate)) {
+                final VirtualMachine vm;
+                try {
+                    vm = VirtualMachine.attach(candidate);
+                } catch (AttachNotSupportedException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+                try {
+                    return vm.startLocalManagementAgent();
+                } finally {
+                    vm.detach();
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Maven log level to which the output of a process is forwarded.
+ *
+ * @author Thuan Luong
+ */
+public enum LogLevel {
+
+    DEBUG {
+        @Override
+        boolean isEnabled(Log log) {
+            return log.isDebugEnabled();
+        }
+
+        @Override
+        void log(Log log, CharSequence message) {
+            log.debug(message);
+        }
+    },
+    INFO {
+        @Override
+        boolean isEnabled(Log log) {
+            return log.isInfoEnabled();
+        }
+
+        @Override
+        void log(Log log, CharSequence message) {
+            log.info(message);
+        }
+    },
+    WARN {
+        @Override
+        boolean isEnabled(Log log) {
+            return log.isWarnEnabled();
+        }
+
+        @Override
+        void log(Log log, CharSequence message) {
+            log.warn(message);
+        }
+    },
+    ERROR {
+        @Override
+        boolean isEnabled(Log log) {
+            return log.isErrorEnabled();
+        }
+
+        @Override
+        void log(Log log, CharSequence message) {
+            log.error(message);
+        }
+    };
+
+    abstract boolean isEnabled(Log log);
+
+    abstract void log(Log log, CharSequence message);
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.base.Charsets;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Declares a process ready once a line of its output matches {@code readyPattern}, and fails the build as soon as a
+ * line matches {@code failurePattern}. The output of a pumped process is matched line by line as it is pumped, so
+ * that no line is missed however much output arrives between two polls; otherwise the output file is scanned, from
+ * where the previous poll stopped. Whichever pattern matches first decides.
+ *
+ * @author Thuan Luong
+ */
+public class LogPatternReadinessCheck extends AbstractPollingReadinessCheck {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private String readyPattern;
+
+    private String failurePattern;
+
+    public void setReadyPattern(String readyPattern) {
+        this.readyPattern = readyPattern;
+    }
+
+    public void setFailurePattern(String failurePattern) {
+        this.failurePattern = failurePattern;
+    }
+
+    @Override
+    String describe(ProcessExecutor process) {
+        return "output matching '" + readyPattern + "'";
+    }
+
+    @Override
+    Probe createProbe(Log log, final ProcessExecutor process) throws MojoExecutionException {
+        if (readyPattern == null) {
+            throw new MojoExecutionException("readyPattern is required for the log pattern readiness check");
+        }
+        final Pattern ready = Pattern.compile(readyPattern);
+        final Pattern failure = failurePattern != null ? Pattern.compile(failurePattern) : null;
+        if (process.getOutputBuffer() != null) {
+            final PatternListener listener = new PatternListener(ready, failure);
+            final long missedLines = process.getOutputBuffer().addListener(listener);
+            if (missedLines > 0) {
+                log.warn(String.format("%d lines of process '%s' were overwritten before they could be matched",
+                        missedLines, process.getName()));
+            }
+            return new Probe() {
+                @Override
+                public boolean isReady() throws MojoExecutionException {
+                    final String failureLine = listener.failureLine;
+                    if (failureLine != null) {
+                        throw failure(process, failureLine);
+                    }
+                    return listener.readyLineSeen;
+                }
+
+                @Override
+                public void close() {
+                    process.getOutputBuffer().removeListener(listener);
+                }
+            };
+        }
+        if (process.getOutputFile() == null) {
+            throw new MojoExecutionException(String.format(
+                    "Process '%s' needs pumpOutput or an outputFile for the log pattern readiness check", process.getName()));
+        }
+
+        final FileLineSource lineSource = new FileLineSource(process.getOutputFile());
+        return new Probe() {
+            private final List<String> lines = new ArrayList<>();
+
+            @Override
+            public boolean isReady() throws MojoExecutionException {
+                lines.clear();
+                lineSource.readNewLines(lines);
+                for (String line : lines) {
+                    if (failure != null && failure.matcher(line).find()) {
+                        throw failure(process, line);
+                    }
+                    if (ready.matcher(line).find()) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    private static MojoExecutionException failure(ProcessExecutor process, String line) {
+        return new MojoExecutionException(String.format("Process '%s' reported a failure: %s", process.getName(), line));
+    }
+
+    /**
+     * Matches the lines of a pumped process as they arrive, until one of the patterns has matched.
+     */
+    private static final class PatternListener implements OutputRingBuffer.LineListener {
+
+        private final Pattern ready;
+
+        private final Pattern failure;
+
+        // only used by the pumping thread
+        private boolean decided;
+
+        private volatile boolean readyLineSeen;
+
+        private volatile String failureLine;
+
+        private PatternListener(Pattern ready, Pattern failure) {
+            this.ready = ready;
+            this.failure = failure;
+        }
+
+        @Override
+        public void onLine(String line) {
+            if (decided) {
+                return;
+            }
+            if (failure != null && failure.matcher(line).find()) {
+                failureLine = line;
+                decided = true;
+            } else if (ready.matcher(line).find()) {
+                readyLineSeen = true;
+                decided = true;
+            }
+        }
+    }
+
+    /**
+     * Reads the lines appended to a file since the last call, keeping an incomplete last line for the next call.
+     * Starts over when the file shrinks, e.g. because it has been rotated.
+     */
+    private static final class FileLineSource {
+
+        private final File file;
+
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+        private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+
+        private long offset;
+
+        private FileLineSource(File file) {
+            this.file = file;
+        }
+
+        void readNewLines(List<String> into) throws MojoExecutionException {
+            if (!file.isFile()) {
+                return;
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                if (channel.size() < offset) {
+                    offset = 0;
+                    partialLine.reset();
+                }
+                int read;
+                while ((read = channel.read(readBuffer, offset)) > 0) {
+                    offset += read;
+                    readBuffer.flip();
+                    while (readBuffer.hasRemaining()) {
+                        final byte b = readBuffer.get();
+                        if (b == '\n') {
+                            into.add(new String(partialLine.toByteArray(), Charsets.UTF_8));
+                            partialLine.reset();
+                        } else if (b != '\r') {
+                            partialLine.write(b);
+                        }
+                    }
+                    readBuffer.clear();
+                }
+            } catch (IOException e) {
+                throw new MojoExecutionException("Could not read output file " + file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the most recent lines of a process' output. Every line gets a sequence number so that readers can consume
+ * the output incrementally; lines which have been overwritten before a reader got to them are skipped. Readers which
+ * must not miss a line register a {@link LineListener} instead.
+ *
+ * @author Thuan Luong
+ */
+final class OutputRingBuffer {
+
+    private final String[] lines;
+
+    private long nextSequence;
+
+    private final List<LineListener> listeners = new ArrayList<>();
+
+    interface LineListener {
+
+        /**
+         * Called on the thread pumping the output while the buffer is locked, so it must return quickly.
+         */
+        void onLine(String line);
+    }
+
+    OutputRingBuffer(int capacity) {
+        this.lines = new String[Math.max(1, capacity)];
+    }
+
+    synchronized void add(String line) {
+        lines[(int) (nextSequence % lines.length)] = line;
+        nextSequence++;
+        for (LineListener listener : listeners) {
+            listener.onLine(line);
+        }
+    }
+
+    /**
+     * Passes the lines still held and every line added from now on to {@code listener}, in order.
+     *
+     * @return the number of earlier lines which have already been overwritten and are not passed on
+     */
+    synchronized long addListener(LineListener listener) {
+        for (long sequence = firstSequence(); sequence < nextSequence; sequence++) {
+            listener.onLine(lines[(int) (sequence % lines.length)]);
+        }
+        listeners.add(listener);
+        return firstSequence();
+    }
+
+    synchronized void removeListener(LineListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the last {@code count} lines, oldest first
+     */
+    synchronized List<String> tail(int count) {
+        final long from = Math.max(firstSequence(), nextSequence - count);
+        final List<String> result = new ArrayList<>();
+        for (long sequence = from; sequence < nextSequence; sequence++) {
+            result.add(lines[(int) (sequence % lines.length)]);
+        }
+        return result;
+    }
+
+    private long firstSequence() {
+        return Math.max(0, nextSequence - lines.length);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * PID files of running processes, from which a later build kills the process trees an earlier build has left behind,
+ * e.g. because its JVM was killed before it could stop them. Every file also records the Maven JVM owning the process,
+ * so files of builds which are still running are left alone, and the start instants of both, so that a reused PID
+ * never leads to killing an unrelated process.
+ *
+ * @author Thuan Luong
+ */
+final class PidFiles {
+
+    private static final String SUFFIX = ".pid";
+
+    private PidFiles() {
+    }
+
+    /**
+     * Records {@code process} as owned by this JVM.
+     *
+     * @return the written file
+     */
+    static File write(File pidDirectory, String name, ProcessHandle process) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty("name", name);
+        properties.setProperty("pid", String.valueOf(process.pid()));
+        properties.setProperty("startInstant", startInstant(process));
+        final ProcessHandle owner = ProcessHandle.current();
+        properties.setProperty("ownerPid", String.valueOf(owner.pid()));
+        properties.setProperty("ownerStartInstant", startInstant(owner));
+        Files.createDirectories(pidDirectory.toPath());
+        final File pidFile = new File(pidDirectory, name + "." + process.pid() + SUFFIX);
+        try (OutputStream out = Files.newOutputStream(pidFile.toPath())) {
+            properties.store(out, "exec-process-plugin");
+        }
+        return pidFile;
+    }
+
+    /**
+     * Kills the process trees recorded in {@code pidDirectory} by JVMs which are no longer running, giving them
+     * {@code gracePeriodMillis} to exit after being asked to, and deletes their files.
+     */
+    static void reapLeftovers(File pidDirectory, long gracePeriodMillis, Log log) {
+        final File[] pidFiles = pidDirectory.listFiles();
+        if (pidFiles == null) {
+            return;
+        }
+        final List<ProcessHandle> leftovers = new ArrayList<>();
+        for (File pidFile : pidFiles) {
+            if (!pidFile.getName().endsWith(SUFFIX)) {
+                continue;
+            }
+            final Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(pidFile.toPath())) {
+                properties.load(in);
+            } catch (IOException e) {
+                log.debug("Could not read PID file " + pidFile + ": " + e.getMessage());
+                continue;
+            }
+            if (find(properties, "ownerPid", "ownerStartInstant").isPresent()) {
+                continue;
+            }
+            final Optional<ProcessHandle> leftover = find(properties, "pid", "startInstant");
+            // without a start instant a reused pid cannot be told apart, so only such a process is left alone
+            if (leftover.isPresent() && !properties.getProperty("startInstant", "").isEmpty()) {
+                log.warn(String.format("Killing process '%s' (pid %d) left behind by an earlier build",
+                        properties.getProperty("name"), leftover.get().pid()));
+                leftovers.addAll(leftover.get().descendants().collect(Collectors.toList()));
+                leftovers.add(leftover.get());
+            }
+            delete(pidFile);
+        }
+        destroyAll(leftovers, gracePeriodMillis);
+    }
+
+    /**
+     * Asks the given processes to exit and kills those still running after {@code gracePeriodMillis}.
+     */
+    static void destroyAll(List<ProcessHandle> processes, long gracePeriodMillis) {
+        for (ProcessHandle process : processes) {
+            process.destroy();
+        }
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(gracePeriodMillis);
+        for (ProcessHandle process : processes) {
+            while (process.isAlive() && System.nanoTime() < deadline) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (process.isAlive()) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    static void delete(File pidFile) {
+        try {
+            Files.deleteIfExists(pidFile.toPath());
+        } catch (IOException e) {
+            // a stale file is recognized by the start instant of its process
+        }
+    }
+
+    /**
+     * @return the live process with the recorded pid, provided it has the recorded start instant, if any
+     */
+    static Optional<ProcessHandle> find(Properties properties, String pidKey, String startInstantKey) {
+        final String startInstant = properties.getProperty(startInstantKey, "");
+        try {
+            final Optional<ProcessHandle> process = ProcessHandle.of(Long.parseLong(properties.getProperty(pidKey)));
+            return process.isPresent() && (startInstant.isEmpty() || startInstant.equals(startInstant(process.get())))
+                    ? process : Optional.<ProcessHandle>empty();
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    static String startInstant(ProcessHandle process) {
+        final Optional<Instant> startInstant = process.info().startInstant();
+        return startInstant.isPresent() ? startInstant.get().toString() : "";
+    }
+}
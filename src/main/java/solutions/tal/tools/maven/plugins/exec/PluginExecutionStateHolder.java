@@ -16,11 +16,18 @@
 
 package solutions.tal.tools.maven.plugins.exec;
 
-import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
 /**
+ * State kept in the plugin context of a module. The collections are concurrent as the processes of
+ * {@code start-all} are started from several threads; the plugin context itself is only guarded while they are
+ * created.
+ *
  * @author Thuan Luong
  */
 @SuppressWarnings("unchecked")
@@ -28,16 +35,38 @@ final class PluginExecutionStateHolder {
 
     private static final String PROCESS_STACK_KEY = "PROCESS_STACK_KEY";
 
+    private static final String SHARED_PROCESS_KEYS_KEY = "SHARED_PROCESS_KEYS_KEY";
+
     static void addProcess(ProcessExecutor process, Map pluginContext) {
         getProcesses(pluginContext).push(process);
     }
 
     static Deque<ProcessExecutor> getProcesses(Map pluginContext) {
-        Deque<ProcessExecutor> processes = (Deque<ProcessExecutor>) pluginContext.get(PROCESS_STACK_KEY);
-        if (processes == null) {
-            processes = new ArrayDeque<>();
-            pluginContext.put(PROCESS_STACK_KEY, processes);
+        synchronized (pluginContext) {
+            Deque<ProcessExecutor> processes = (Deque<ProcessExecutor>) pluginContext.get(PROCESS_STACK_KEY);
+            if (processes == null) {
+                processes = new ConcurrentLinkedDeque<>();
+                pluginContext.put(PROCESS_STACK_KEY, processes);
+            }
+            return processes;
+        }
+    }
+
+    static void addSharedProcess(String fingerprint, Map pluginContext) {
+        getSharedProcesses(pluginContext).add(fingerprint);
+    }
+
+    /**
+     * @return the fingerprints of the {@link SharedProcessRegistry shared processes} acquired in this plugin context
+     */
+    static Set<String> getSharedProcesses(Map pluginContext) {
+        synchronized (pluginContext) {
+            Set<String> fingerprints = (Set<String>) pluginContext.get(SHARED_PROCESS_KEYS_KEY);
+            if (fingerprints == null) {
+                fingerprints = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                pluginContext.put(SHARED_PROCESS_KEYS_KEY, fingerprints);
+            }
+            return fingerprints;
         }
-        return processes;
     }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.base.Charsets;
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Reserves free TCP ports for processes. A port is free when it can be bound on the loopback interface and it has not
+ * been handed out by any Maven JVM on this host within the lease time. Reservations are kept in a file in a directory
+ * shared by all builds on the host and only read and written while holding the lock of a lock file next to it, so
+ * concurrent builds never hand out the same port. The lease only has to cover the time until the process binds the
+ * port, from then on the port is not free anymore anyway.
+ *
+ * @author Thuan Luong
+ */
+final class PortAllocator {
+
+    private static final String LOCK_FILE = "ports.lock";
+
+    private static final String RESERVATIONS_FILE = "ports.reserved";
+
+    private static final int MAX_ATTEMPTS = 1000;
+
+    /**
+     * File locks are held per JVM, so threads of the same build have to be serialized before taking it.
+     */
+    private static final Object JVM_LOCK = new Object();
+
+    private static final Random RANDOM = new Random();
+
+    private PortAllocator() {
+    }
+
+    /**
+     * Reserves a port for every name, from {@code minPort} to {@code maxPort} inclusive or, when both are zero, from
+     * the ephemeral port range of the operating system.
+     *
+     * @return the reserved port of every name, in the order of the names
+     */
+    static Map<String, Integer> reserve(List<String> names, int minPort, int maxPort, long leaseMillis,
+                                        File lockDirectory) throws MojoExecutionException {
+        if (minPort < 0 || maxPort > 65535 || minPort > maxPort || (minPort == 0) != (maxPort == 0)) {
+            throw new MojoExecutionException("Invalid port range " + minPort + "-" + maxPort);
+        }
+        if (!lockDirectory.isDirectory() && !lockDirectory.mkdirs() && !lockDirectory.isDirectory()) {
+            throw new MojoExecutionException("Could not create port lock directory " + lockDirectory);
+        }
+        synchronized (JVM_LOCK) {
+            try (FileChannel lockChannel = FileChannel.open(new File(lockDirectory, LOCK_FILE).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                final FileLock lock = lockChannel.lock();
+                try {
+                    final File reservationsFile = new File(lockDirectory, RESERVATIONS_FILE);
+                    final long now = System.currentTimeMillis();
+                    final Map<Integer, Long> reservations = readReservations(reservationsFile, now);
+                    final Map<String, Integer> ports = new LinkedHashMap<>();
+                    for (String name : names) {
+                        final int port = findFreePort(reservations, minPort, maxPort);
+                        reservations.put(port, now + leaseMillis);
+                        ports.put(name, port);
+                    }
+                    writeReservations(reservationsFile, reservations);
+                    return ports;
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException e) {
+                throw new MojoExecutionException("Could not reserve ports using lock directory " + lockDirectory, e);
+            }
+        }
+    }
+
+    private static int findFreePort(Map<Integer, Long> reservations, int minPort, int maxPort)
+            throws IOException, MojoExecutionException {
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            final int candidate = minPort == 0 ? 0 : minPort + RANDOM.nextInt(maxPort - minPort + 1);
+            final int port = tryBind(candidate);
+            if (port > 0 && !reservations.containsKey(port)) {
+                return port;
+            }
+        }
+        throw new MojoExecutionException("No free port found" + (minPort == 0 ? "" : " from " + minPort + " to " + maxPort)
+                + " after " + MAX_ATTEMPTS + " attempts");
+    }
+
+    /**
+     * @return the bound port, or -1 if {@code port} is in use
+     */
+    private static int tryBind(int port) {
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.setReuseAddress(false);
+            socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return the unexpired reservations by port, each line of the file being {@code <port> <expiry millis>}
+     */
+    private static Map<Integer, Long> readReservations(File reservationsFile, long now) throws IOException {
+        final Map<Integer, Long> reservations = new HashMap<>();
+        if (!reservationsFile.isFile()) {
+            return reservations;
+        }
+        for (String line : Files.readAllLines(reservationsFile.toPath(), Charsets.UTF_8)) {
+            final String[] fields = line.trim().split(" ");
+            if (fields.length != 2) {
+                continue;
+            }
+            try {
+                final long expiry = Long.parseLong(fields[1]);
+                if (expiry > now) {
+                    reservations.put(Integer.valueOf(fields[0]), expiry);
+                }
+            } catch (NumberFormatException e) {
+                // ignore a corrupt line, the port is merely not reserved any more
+            }
+        }
+        return reservations;
+    }
+
+    private static void writeReservations(File reservationsFile, Map<Integer, Long> reservations) throws IOException {
+        final StringBuilder content = new StringBuilder();
+        for (Map.Entry<Integer, Long> reservation : reservations.entrySet()) {
+            content.append(reservation.getKey()).append(' ').append(reservation.getValue()).append('\n');
+        }
+        final File temporary = new File(reservationsFile.getParentFile(), RESERVATIONS_FILE + ".tmp");
+        Files.write(temporary.toPath(), content.toString().getBytes(Charsets.UTF_8));
+        Files.move(temporary.toPath(), reservationsFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
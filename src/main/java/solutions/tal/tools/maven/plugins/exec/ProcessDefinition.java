@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import org.apache.maven.model.Dependency;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configuration of a single process started by the {@code start-all} goal. Mirrors the parameters of the
+ * {@code start} goal and adds {@code dependsOn}, the names of the processes which must be ready before this one
+ * is started.
+ *
+ * @author Thuan Luong
+ */
+public class ProcessDefinition {
+
+    private String name;
+
+    private String executable;
+
+    private File outputFile;
+
+    private File workingDir;
+
+    private List<?> arguments;
+
+    private List<Dependency> dependencies;
+
+    private List<String> additionalClasspathElements;
+
+    private Map<String, String> environmentVariables = new HashMap<>();
+
+    private Map<String, String> systemProperties = new HashMap<>();
+
+    private ApplicationReadiness readinessCheck;
+
+    private AbstractPollingReadinessCheck healthCheck;
+
+    private CommandLineMode commandLineMode = CommandLineMode.INLINE;
+
+    private boolean pumpOutput;
+
+    private LogLevel outputLogLevel = LogLevel.INFO;
+
+    private int outputBufferLines = 1000;
+
+    private long maxOutputFileSize;
+
+    private long maxOutputTotalSize;
+
+    private boolean sampleResources;
+
+    private boolean appCds;
+
+    private String cpuSet;
+
+    private int cpus;
+
+    private Integer niceness;
+
+    private List<String> dependsOn = new ArrayList<>();
+
+    String getName() {
+        return name;
+    }
+
+    String getExecutable() {
+        return executable;
+    }
+
+    File getOutputFile() {
+        return outputFile;
+    }
+
+    File getWorkingDir() {
+        return workingDir;
+    }
+
+    List<?> getArguments() {
+        return arguments;
+    }
+
+    List<Dependency> getDependencies() {
+        return dependencies;
+    }
+
+    List<String> getAdditionalClasspathElements() {
+        return additionalClasspathElements;
+    }
+
+    Map<String, String> getEnvironmentVariables() {
+        return environmentVariables;
+    }
+
+    Map<String, String> getSystemProperties() {
+        return systemProperties;
+    }
+
+    ApplicationReadiness getReadinessCheck() {
+        return readinessCheck;
+    }
+
+    AbstractPollingReadinessCheck getHealthCheck() {
+        return healthCheck;
+    }
+
+    CommandLineMode getCommandLineMode() {
+        return commandLineMode;
+    }
+
+    boolean isPumpOutput() {
+        return pumpOutput;
+    }
+
+    LogLevel getOutputLogLevel() {
+        return outputLogLevel;
+    }
+
+    int getOutputBufferLines() {
+        return outputBufferLines;
+    }
+
+    long getMaxOutputFileSize() {
+        return maxOutputFileSize;
+    }
+
+    long getMaxOutputTotalSize() {
+        return maxOutputTotalSize;
+    }
+
+    boolean isSampleResources() {
+        return sampleResources;
+    }
+
+    boolean isAppCds() {
+        return appCds;
+    }
+
+    String getCpuSet() {
+        return cpuSet;
+    }
+
+    int getCpus() {
+        return cpus;
+    }
+
+    Integer getNiceness() {
+        return niceness;
+    }
+
+    List<String> getDependsOn() {
+        return dependsOn;
+    }
+}
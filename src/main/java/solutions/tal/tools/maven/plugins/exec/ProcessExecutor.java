@@ -16,25 +16,38 @@
 
 package solutions.tal.tools.maven.plugins.exec;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 /**
  * @author Thuan Luong
@@ -49,12 +62,76 @@ final class ProcessExecutor {
 
     private final Map<String, String> environmentVariables = new HashMap<>();
 
+    private String mainClass;
+
+    private Collection<String> classpathElements;
+
+    private String classpathArgument;
+
+    private String shutdownMethod;
+
+    private final List<String> jvmOptions = new ArrayList<>();
+
     private Set<String> systemPropertyArgs;
 
-    private Process process;
+    private volatile Process process;
+
+    /**
+     * Guards starting the process against a concurrent {@link #stop()}, e.g. of a replica still starting when
+     * {@code stop-all} runs, which would otherwise miss the process and leave it running.
+     */
+    private final Object startLock = new Object();
 
     private File outputFile;
 
+    private long maxOutputFileSize;
+
+    private long maxOutputTotalSize;
+
+    private File argumentFile;
+
+    private LogLevel outputLogLevel;
+
+    private int outputBufferLines;
+
+    private ProcessOutputPump outputPump;
+
+    private long resourceSampleIntervalMillis;
+
+    private File resourceReportDirectory;
+
+    private ProcessResourceSampler resourceSampler;
+
+    private ProcessWatchdog watchdog;
+
+    private volatile boolean stopRequested;
+
+    private volatile String failure;
+
+    private File pidDirectory;
+
+    private File pidFile;
+
+    /**
+     * Descendants of the process when it was asked to stop, which would not be found any more once their parent,
+     * e.g. a wrapper script, has exited.
+     */
+    private volatile List<ProcessHandle> descendants = Collections.emptyList();
+
+    private final Set<ProcessExecutor> prerequisites = new LinkedHashSet<>();
+
+    private int instance;
+
+    private String cpuSet;
+
+    private int cpuCount;
+
+    private Integer niceness;
+
+    private boolean keepAlive;
+
+    private final ProcessTimings timings = new ProcessTimings();
+
     private ProcessExecutor(String name, String executable, List<String> args) {
         this.name = name;
         this.executable = executable;
@@ -65,6 +142,21 @@ final class ProcessExecutor {
         return new ProcessExecutor(name, executable, args);
     }
 
+    /**
+     * Creates an executor running {@code mainClass} inside this JVM as an {@link InJvmProcess}.
+     *
+     * @param shutdownMethod static no-argument method of the main class stopping it, or {@code null} to stop it by
+     *                       interrupting its threads
+     */
+    static ProcessExecutor createInJvm(String name, String mainClass, Collection<String> classpathElements,
+                                       List<String> args, String shutdownMethod) {
+        final ProcessExecutor processExecutor = new ProcessExecutor(name, null, args);
+        processExecutor.mainClass = mainClass;
+        processExecutor.classpathElements = new ArrayList<>(classpathElements);
+        processExecutor.shutdownMethod = shutdownMethod;
+        return processExecutor;
+    }
+
     ProcessExecutor withEnvironmentVariables(Map<String, String> environmentVariables) {
         this.environmentVariables.putAll(Maps.transformValues(environmentVariables,
                 new Function<String, String>() {
@@ -81,6 +173,86 @@ final class ProcessExecutor {
         return this;
     }
 
+    /**
+     * Rotates the output file once it exceeds {@code maxFileSize} bytes, keeping at most {@code maxTotalSize} bytes
+     * of output including the compressed rotated segments. The output is pumped for that, but only forwarded to the
+     * Maven log if {@link #withOutputPump(LogLevel, int)} asks for it. A size of zero or less means no limit.
+     */
+    ProcessExecutor withOutputRotation(long maxFileSize, long maxTotalSize) {
+        this.maxOutputFileSize = maxFileSize;
+        this.maxOutputTotalSize = maxTotalSize;
+        return this;
+    }
+
+    /**
+     * Pumps the output of the process into the Maven log at the given level instead of inheriting the console,
+     * keeping the last {@code bufferLines} lines in memory. An output file, if set, receives a copy of the output.
+     */
+    ProcessExecutor withOutputPump(LogLevel outputLogLevel, int bufferLines) {
+        this.outputLogLevel = outputLogLevel;
+        this.outputBufferLines = bufferLines;
+        return this;
+    }
+
+    /**
+     * Samples the resources used by the process and its descendants every {@code intervalMillis} while it runs and
+     * reports them into {@code reportDirectory}.
+     */
+    ProcessExecutor withResourceSampling(long intervalMillis, File reportDirectory) {
+        this.resourceSampleIntervalMillis = intervalMillis;
+        this.resourceReportDirectory = reportDirectory;
+        return this;
+    }
+
+    /**
+     * Adds options placed directly after the executable. Unlike the other settings they are not part of the
+     * {@link #configurationFingerprint() fingerprint}, as they are derived from the rest of the configuration.
+     */
+    ProcessExecutor withJvmOptions(List<String> jvmOptions) {
+        this.jvmOptions.addAll(jvmOptions);
+        return this;
+    }
+
+    /**
+     * Starts watching the running process, see {@link ProcessWatchdog}.
+     */
+    void startWatchdog(long intervalMillis, AbstractPollingReadinessCheck healthCheck, int healthFailureThreshold,
+                       boolean allowCleanExit, Log log) throws MojoExecutionException {
+        watchdog = ProcessWatchdog.start(this, intervalMillis, healthCheck, healthFailureThreshold, allowCleanExit,
+                log);
+    }
+
+    void recordFailure(String failure) {
+        this.failure = failure;
+    }
+
+    /**
+     * @return why the process failed while it was supposed to run, or {@code null} if it did not
+     */
+    String getFailure() {
+        return failure;
+    }
+
+    boolean isStopRequested() {
+        return stopRequested;
+    }
+
+    /**
+     * Records the process in a {@link PidFiles PID file} in the given directory while it runs.
+     */
+    ProcessExecutor withPidDirectory(File pidDirectory) {
+        this.pidDirectory = pidDirectory;
+        return this;
+    }
+
+    /**
+     * Passes system properties and arguments through the given Java launcher argument file instead of the command line.
+     */
+    ProcessExecutor withArgumentFile(File argumentFile) {
+        this.argumentFile = argumentFile;
+        return this;
+    }
+
     ProcessExecutor withSystemProperties(Map<String, String> systemProperties) {
         final Iterable<String> transformedSystemProperties = Iterables.transform(systemProperties.entrySet(), new Function<Map.Entry<String,String>, String>() {
             @Override
@@ -92,6 +264,109 @@ final class ProcessExecutor {
         return this;
     }
 
+    /**
+     * Declares processes which this process needs while running; they are only stopped after this one.
+     */
+    ProcessExecutor withPrerequisites(Collection<ProcessExecutor> prerequisites) {
+        this.prerequisites.addAll(prerequisites);
+        return this;
+    }
+
+    Set<ProcessExecutor> getPrerequisites() {
+        return prerequisites;
+    }
+
+    /**
+     * Pins the process to the CPUs of {@code cpuSet}, a list as understood by {@code taskset -c}, or else to
+     * {@code cpuCount} CPUs allocated when it starts, see {@link CpuScheduling}. Like the JVM options, the scheduling
+     * settings are not part of the {@link #configurationFingerprint() fingerprint}.
+     */
+    ProcessExecutor withCpuAffinity(String cpuSet, int cpuCount) {
+        this.cpuSet = cpuSet;
+        this.cpuCount = cpuCount;
+        return this;
+    }
+
+    /**
+     * Runs the process with its nice level raised by {@code niceness}, or unchanged if {@code null}.
+     */
+    ProcessExecutor withNiceness(Integer niceness) {
+        this.niceness = niceness;
+        return this;
+    }
+
+    /**
+     * Records the classpath elements of a forked process and the argument they are rendered to. The elements then
+     * become part of its {@link #configurationFingerprint() fingerprint} in place of that argument, which may be the
+     * path of a pathing jar specific to the module starting the process.
+     */
+    ProcessExecutor withClasspathElements(Collection<String> classpathElements, String classpathArgument) {
+        this.classpathElements = new ArrayList<>(classpathElements);
+        this.classpathArgument = classpathArgument;
+        return this;
+    }
+
+    /**
+     * @return the classpath elements of the process, or {@code null} if unknown
+     */
+    Collection<String> getClasspathElements() {
+        return classpathElements;
+    }
+
+    /**
+     * Leaves the process running once the build is over, see {@link KeepAliveProcesses}. It is neither recorded in a
+     * PID file nor stopped when the JVM exits, runs in a session of its own so that interrupting the build does not
+     * reach it, and writes its output into the output file or else {@code defaultOutputFile}, as neither the Maven
+     * log nor the console outlive the build.
+     */
+    ProcessExecutor withKeepAlive(File defaultOutputFile, Log log) {
+        if (outputLogLevel != null || maxOutputFileSize > 0) {
+            log.warn("Process '" + name + "' is kept alive, its output is neither pumped nor rotated");
+        }
+        this.keepAlive = true;
+        this.outputLogLevel = null;
+        this.maxOutputFileSize = 0;
+        if (outputFile == null) {
+            outputFile = defaultOutputFile;
+        }
+        return this;
+    }
+
+    boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Manages a running process kept alive by an earlier build instead of starting a new one.
+     */
+    void attach(ProcessHandle handle) {
+        process = new ReattachedProcess(handle);
+    }
+
+    /**
+     * Stops watching a kept alive process and leaves it running.
+     */
+    void detach() {
+        if (watchdog != null) {
+            watchdog.stop();
+        }
+        if (resourceSampler != null) {
+            resourceSampler.stop();
+        }
+    }
+
+    /**
+     * Marks the process as the given replica of a process started several times, see {@link ProcessInstances}.
+     */
+    ProcessExecutor withInstance(int instance) {
+        this.instance = instance;
+        return this;
+    }
+
+    int getInstance() {
+        return instance;
+    }
+
     private void validate() throws MojoExecutionException {
         // check if executable exists
         final String sanitizedExec = sanitizedExecutable(executable);
@@ -106,19 +381,96 @@ final class ProcessExecutor {
         return osName.contains("windows") ? executable + ".exe" : executable;
     }
 
+    /**
+     * @return a hash over everything which determines what is launched: executable, main class, classpath, arguments,
+     * system properties and environment variables. The working directory and the output file are left out, as they
+     * usually differ between the modules configuring the same process.
+     */
+    String configurationFingerprint() {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(String.valueOf(executable), Charsets.UTF_8).putChar('\0');
+        if (mainClass != null) {
+            hasher.putString(mainClass, Charsets.UTF_8).putChar('\0');
+        }
+        if (classpathElements != null) {
+            for (String classpathElement : classpathElements) {
+                hasher.putString(classpathElement, Charsets.UTF_8).putChar('\0');
+            }
+        }
+        for (String arg : args) {
+            if (arg.equals(classpathArgument)) {
+                hasher.putChar('\1');
+            } else {
+                hasher.putString(arg, Charsets.UTF_8).putChar('\0');
+            }
+        }
+        if (systemPropertyArgs != null) {
+            for (String systemPropertyArg : new TreeSet<>(systemPropertyArgs)) {
+                hasher.putString(systemPropertyArg, Charsets.UTF_8).putChar('\0');
+            }
+        }
+        for (Map.Entry<String, String> entry : new TreeMap<>(environmentVariables).entrySet()) {
+            hasher.putString(entry.getKey(), Charsets.UTF_8).putChar('=').putString(entry.getValue(), Charsets.UTF_8).putChar('\0');
+        }
+        return hasher.hash().toString();
+    }
+
     String getName() {
         return this.name;
     }
 
+    ProcessTimings getTimings() {
+        return timings;
+    }
+
     void execute(File workingDir, final Log mavenLog) throws MojoExecutionException {
+        if (mainClass != null) {
+            mavenLog.info("Running " + mainClass + " inside the Maven JVM with arguments:\n" + args);
+            final long spawnStart = System.nanoTime();
+            synchronized (startLock) {
+                checkNotStopped();
+                process = InJvmProcess.start(name, mainClass, classpathElements, args, shutdownMethod, mavenLog);
+            }
+            timings.recordSince(ProcessTimings.Phase.SPAWN, spawnStart);
+            return;
+        }
+        final long validateStart = System.nanoTime();
         validate();
+        timings.recordSince(ProcessTimings.Phase.VALIDATE, validateStart);
+
+        final List<String> processArguments = new ArrayList<>(jvmOptions);
+        if (systemPropertyArgs != null) {
+            processArguments.addAll(systemPropertyArgs);
+        }
+        processArguments.addAll(args);
 
         final List<String> arguments = new ArrayList<>();
         arguments.add(executable);
-        if (systemPropertyArgs != null) {
-            arguments.addAll(systemPropertyArgs);
+        if (argumentFile != null) {
+            try {
+                if (!LaunchFiles.writeArgumentFile(argumentFile, processArguments)) {
+                    mavenLog.debug("Reusing unchanged argument file " + argumentFile);
+                }
+            } catch (IOException e) {
+                throw new MojoExecutionException("Could not write argument file " + argumentFile, e);
+            }
+            arguments.add("@" + argumentFile.getAbsolutePath());
+        } else {
+            arguments.addAll(processArguments);
+        }
+
+        final List<Integer> allocatedCpus = cpuSet == null && cpuCount > 0
+                ? CpuScheduling.allocate(cpuCount, mavenLog) : Collections.<Integer>emptyList();
+        arguments.addAll(0, CpuScheduling.commandPrefix(
+                allocatedCpus.isEmpty() ? cpuSet : Joiner.on(',').join(allocatedCpus), niceness, mavenLog));
+        if (keepAlive) {
+            final String setsid = CpuScheduling.findExecutable("setsid");
+            if (setsid != null) {
+                arguments.add(0, setsid);
+            } else {
+                mavenLog.warn("setsid not found on the PATH, interrupting the build also interrupts process '" + name + "'");
+            }
         }
-        arguments.addAll(args);
 
         if (mavenLog.isInfoEnabled()) {
             mavenLog.info("Command line arguments:\n" + arguments);
@@ -130,23 +482,182 @@ final class ProcessExecutor {
         pb.directory(workingDir);
         pb.environment().putAll(environmentVariables);
         pb.redirectErrorStream(true);
-        if (outputFile != null) {
+        final boolean rotateOutput = outputFile != null && maxOutputFileSize > 0;
+        if (outputLogLevel != null || rotateOutput) {
+            pb.redirectInput(ProcessBuilder.Redirect.INHERIT);
+        } else if (outputFile != null) {
             pb.redirectOutput(outputFile);
         } else {
             pb.inheritIO();
         }
+        final long spawnStart = System.nanoTime();
         try {
-            process = pb.start();
+            synchronized (startLock) {
+                checkNotStopped();
+                process = pb.start();
+            }
+        } catch (MojoExecutionException e) {
+            CpuScheduling.release(allocatedCpus);
+            throw e;
         } catch (IOException e) {
+            CpuScheduling.release(allocatedCpus);
             throw new MojoExecutionException("Error starting process", e);
         }
+        if (!allocatedCpus.isEmpty()) {
+            process.onExit().thenRun(new Runnable() {
+                @Override
+                public void run() {
+                    CpuScheduling.release(allocatedCpus);
+                }
+            });
+        }
+        timings.recordSince(ProcessTimings.Phase.SPAWN, spawnStart);
+        if (outputLogLevel != null || rotateOutput) {
+            try {
+                final Writer outputFileWriter = outputFile != null
+                        ? RotatingOutputFile.open(outputFile, maxOutputFileSize, maxOutputTotalSize, mavenLog)
+                        : null;
+                outputPump = ProcessOutputPump.start(name, process.getInputStream(), mavenLog, outputLogLevel,
+                        outputBufferLines, outputFileWriter);
+            } catch (IOException e) {
+                process.destroy();
+                throw new MojoExecutionException("Could not open output file " + outputFile, e);
+            }
+        }
+        if (pidDirectory != null && !keepAlive) {
+            try {
+                pidFile = PidFiles.write(pidDirectory, name, process.toHandle());
+            } catch (IOException e) {
+                mavenLog.warn("Could not write PID file of process '" + name + "': " + e.getMessage());
+            }
+        }
+        if (resourceReportDirectory != null && !stopRequested) {
+            resourceSampler = ProcessResourceSampler.start(name, getPid(), resourceSampleIntervalMillis,
+                    resourceReportDirectory, mavenLog);
+        }
+    }
+
+    private void checkNotStopped() throws MojoExecutionException {
+        if (stopRequested) {
+            throw new MojoExecutionException("Process '" + name + "' was stopped before it started");
+        }
+    }
+
+    /**
+     * @return the operating system process id, or -1 if the process has not been started or runs in this JVM
+     */
+    long getPid() {
+        return process != null && !(process instanceof InJvmProcess) ? process.pid() : -1;
+    }
+
+    ProcessHandle getProcessHandle() {
+        return process.toHandle();
+    }
+
+    File getOutputFile() {
+        return outputFile;
     }
 
+    /**
+     * @return the most recent output of the process, or {@code null} when its output is not pumped
+     */
+    OutputRingBuffer getOutputBuffer() {
+        return outputPump != null ? outputPump.getBuffer() : null;
+    }
+
+    boolean isAlive() {
+        return process != null && process.isAlive();
+    }
+
+    int exitValue() {
+        return process.exitValue();
+    }
+
+    /**
+     * Asks the process and all its descendants to exit.
+     */
     void stop() {
+        synchronized (startLock) {
+            stopRequested = true;
+        }
+        if (watchdog != null) {
+            watchdog.stop();
+        }
+        if (resourceSampler != null) {
+            resourceSampler.stop();
+        }
+        if (process == null) {
+            return;
+        }
+        descendants = currentDescendants();
         process.destroy();
+        for (ProcessHandle descendant : descendants) {
+            descendant.destroy();
+        }
+    }
+
+    /**
+     * Kills the process and all its descendants, including those known from {@link #stop()} which have been
+     * orphaned since.
+     */
+    void forceStop() {
+        synchronized (startLock) {
+            stopRequested = true;
+        }
+        if (process == null) {
+            return;
+        }
+        final Set<ProcessHandle> tree = new LinkedHashSet<>(descendants);
+        tree.addAll(currentDescendants());
+        descendants = new ArrayList<>(tree);
+        process.destroyForcibly();
+        for (ProcessHandle descendant : tree) {
+            descendant.destroyForcibly();
+        }
+    }
+
+    /**
+     * @return {@code true} if the process and the descendants it had when asked to stop have exited within the given
+     * time
+     */
+    boolean waitFor(long timeout, TimeUnit unit) {
+        if (process == null) {
+            return true;
+        }
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            if (!process.waitFor(timeout, unit)) {
+                return false;
+            }
+            for (ProcessHandle descendant : descendants) {
+                final long remainingNanos = deadline - System.nanoTime();
+                if (descendant.isAlive()) {
+                    descendant.onExit().get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            // onExit() does not complete exceptionally, checked below
+        }
+        for (ProcessHandle descendant : descendants) {
+            if (descendant.isAlive()) {
+                return false;
+            }
+        }
+        if (pidFile != null) {
+            PidFiles.delete(pidFile);
+        }
+        return true;
     }
 
     void waitFor() {
+        if (process == null) {
+            return;
+        }
         try {
             process.waitFor();
         } catch (InterruptedException e) {
@@ -154,5 +665,7 @@ final class ProcessExecutor {
         }
     }
 
-
+    private List<ProcessHandle> currentDescendants() {
+        return process.descendants().collect(Collectors.toList());
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Validated dependency graph of {@link ProcessDefinition}s. Names must be unique, every {@code dependsOn} entry
+ * must refer to a defined process and the graph must be acyclic.
+ *
+ * @author Thuan Luong
+ */
+final class ProcessGraph {
+
+    private final Map<String, ProcessDefinition> definitions;
+
+    private final ListMultimap<String, String> dependents;
+
+    private ProcessGraph(Map<String, ProcessDefinition> definitions, ListMultimap<String, String> dependents) {
+        this.definitions = definitions;
+        this.dependents = dependents;
+    }
+
+    static ProcessGraph of(List<ProcessDefinition> processes) throws MojoExecutionException {
+        final Map<String, ProcessDefinition> definitions = new LinkedHashMap<>();
+        for (ProcessDefinition definition : processes) {
+            if (definition.getName() == null) {
+                throw new MojoExecutionException("Every process definition requires a name");
+            }
+            if (definitions.put(definition.getName(), definition) != null) {
+                throw new MojoExecutionException("Duplicate process name: " + definition.getName());
+            }
+        }
+
+        final ListMultimap<String, String> dependents = ArrayListMultimap.create();
+        for (ProcessDefinition definition : definitions.values()) {
+            for (String prerequisite : definition.getDependsOn()) {
+                if (!definitions.containsKey(prerequisite)) {
+                    throw new MojoExecutionException(String.format("Process '%s' depends on unknown process '%s'",
+                            definition.getName(), prerequisite));
+                }
+                dependents.put(prerequisite, definition.getName());
+            }
+        }
+
+        final Map<String, Integer> remaining = new HashMap<>();
+        final Deque<String> ready = new ArrayDeque<>();
+        for (ProcessDefinition definition : definitions.values()) {
+            remaining.put(definition.getName(), definition.getDependsOn().size());
+            if (definition.getDependsOn().isEmpty()) {
+                ready.add(definition.getName());
+            }
+        }
+        int visited = 0;
+        while (!ready.isEmpty()) {
+            final String name = ready.poll();
+            visited++;
+            for (String dependent : dependents.get(name)) {
+                final int count = remaining.get(dependent) - 1;
+                remaining.put(dependent, count);
+                if (count == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (visited != definitions.size()) {
+            throw new MojoExecutionException("Cyclic dependsOn declarations between processes: " + unresolved(remaining));
+        }
+        return new ProcessGraph(definitions, dependents);
+    }
+
+    private static String unresolved(Map<String, Integer> remaining) {
+        final StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Integer> entry : remaining.entrySet()) {
+            if (entry.getValue() > 0) {
+                if (sb.length() > 0) {
+                    sb.append(", ");
+                }
+                sb.append(entry.getKey());
+            }
+        }
+        return sb.toString();
+    }
+
+    Collection<ProcessDefinition> definitions() {
+        return definitions.values();
+    }
+
+    ProcessDefinition get(String name) {
+        return definitions.get(name);
+    }
+
+    List<String> dependentsOf(String name) {
+        return dependents.get(name);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Substitutes the index of a replica, counted from zero, for the {@value #PLACEHOLDER} placeholder in the settings of
+ * a process started several times.
+ *
+ * @author Thuan Luong
+ */
+final class ProcessInstances {
+
+    static final String PLACEHOLDER = "@{instance}";
+
+    private ProcessInstances() {
+    }
+
+    static String resolve(String value, int instance) {
+        return value != null ? value.replace(PLACEHOLDER, String.valueOf(instance)) : null;
+    }
+
+    /**
+     * Resolves the name of a replica; without a placeholder, the index is appended to keep the names of several
+     * replicas distinct.
+     */
+    static String resolveName(String name, int instance, int instances) {
+        if (instances > 1 && name != null && !name.contains(PLACEHOLDER)) {
+            return name + "-" + instance;
+        }
+        return resolve(name, instance);
+    }
+
+    /**
+     * Resolves the output file of a replica; without a placeholder, the index is inserted before the extension so that
+     * several replicas do not write into the same file.
+     */
+    static File resolveFile(File file, int instance, int instances) {
+        if (file == null) {
+            return null;
+        }
+        final String path = file.getPath();
+        if (instances > 1 && !path.contains(PLACEHOLDER)) {
+            final String fileName = file.getName();
+            final int extension = fileName.lastIndexOf('.');
+            final String replicaName = extension > 0
+                    ? fileName.substring(0, extension) + "-" + instance + fileName.substring(extension)
+                    : fileName + "-" + instance;
+            return new File(file.getParentFile(), replicaName);
+        }
+        return new File(resolve(path, instance));
+    }
+
+    static List<String> resolveAll(List<String> values, final int instance) {
+        return Lists.newArrayList(Lists.transform(values, new Function<String, String>() {
+            @Override
+            public String apply(String input) {
+                return resolve(input, instance);
+            }
+        }));
+    }
+
+    static Map<String, String> resolveValues(Map<String, String> values, final int instance) {
+        return new LinkedHashMap<>(Maps.transformValues(values, new Function<String, String>() {
+            @Override
+            public String apply(String input) {
+                return resolve(input, instance);
+            }
+        }));
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.base.Charsets;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drains the output of a process and forwards it, prefixed with the process name, to the Maven log.
+ * <p>
+ * Process output streams cannot be read without blocking, so every process gets a reader of its own from
+ * {@link TaskExecutors}. Readers only append to the in-memory {@link OutputRingBuffer}, the optional output file and
+ * a bounded queue; a single shared thread writes the queue to the Maven log. When the log cannot keep up, lines are
+ * dropped from the log rather than blocking the reader, so the process is never stalled on a full pipe. Lines longer
+ * than {@value #MAX_LINE_LENGTH} characters, e.g. progress bars or binary output, are split so that memory stays
+ * bounded.
+ *
+ * @author Thuan Luong
+ */
+final class ProcessOutputPump {
+
+    private static final int LOG_QUEUE_CAPACITY = 10000;
+
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    private static final ExecutorService READERS = TaskExecutors.newExecutor("exec-process-output-", 0);
+
+    private static final BlockingQueue<LogLine> LOG_QUEUE = new ArrayBlockingQueue<>(LOG_QUEUE_CAPACITY);
+
+    static {
+        final Thread forwarder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (;;) {
+                    final LogLine line;
+                    try {
+                        line = LOG_QUEUE.take();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    line.pump.level.log(line.pump.log, line.text);
+                }
+            }
+        }, "exec-process-log-forwarder");
+        forwarder.setDaemon(true);
+        forwarder.start();
+    }
+
+    private final String prefix;
+
+    private final Log log;
+
+    private final LogLevel level;
+
+    private final OutputRingBuffer buffer;
+
+    private final Writer outputFileWriter;
+
+    private final AtomicLong droppedLines = new AtomicLong();
+
+    private ProcessOutputPump(String name, Log log, LogLevel level, int bufferLines, Writer outputFileWriter) {
+        this.prefix = "[" + name + "] ";
+        this.log = log;
+        this.level = level;
+        this.buffer = new OutputRingBuffer(bufferLines);
+        this.outputFileWriter = outputFileWriter;
+    }
+
+    /**
+     * Starts draining {@code output}. When {@code level} is {@code null} the output is not logged, when
+     * {@code outputFileWriter} is not {@code null} the output is also written to it.
+     */
+    static ProcessOutputPump start(String name, final InputStream output, Log log, LogLevel level, int bufferLines,
+                                   Writer outputFileWriter) {
+        final ProcessOutputPump pump = new ProcessOutputPump(name, log, level, bufferLines, outputFileWriter);
+        READERS.execute(new Runnable() {
+            @Override
+            public void run() {
+                pump.drain(output);
+            }
+        });
+        return pump;
+    }
+
+    OutputRingBuffer getBuffer() {
+        return buffer;
+    }
+
+    private void drain(InputStream output) {
+        final boolean logEnabled = level != null && level.isEnabled(log);
+        final char[] chunk = new char[MAX_LINE_LENGTH];
+        final StringBuilder line = new StringBuilder();
+        // line terminators are \n, \r or \r\n as with BufferedReader.readLine()
+        boolean skipLineFeed = false;
+        try (Reader reader = new InputStreamReader(output, Charsets.UTF_8);
+             Writer writer = outputFileWriter) {
+            int read;
+            while ((read = reader.read(chunk)) >= 0) {
+                for (int i = 0; i < read; i++) {
+                    final char c = chunk[i];
+                    if (skipLineFeed) {
+                        skipLineFeed = false;
+                        if (c == '\n') {
+                            continue;
+                        }
+                    }
+                    if (c == '\n' || c == '\r') {
+                        skipLineFeed = c == '\r';
+                        emit(line, writer, logEnabled);
+                    } else {
+                        line.append(c);
+                        if (line.length() >= MAX_LINE_LENGTH && !Character.isHighSurrogate(c)) {
+                            emit(line, writer, logEnabled);
+                        }
+                    }
+                }
+                if (writer != null) {
+                    writer.flush();
+                }
+            }
+            if (line.length() > 0) {
+                emit(line, writer, logEnabled);
+            }
+        } catch (IOException e) {
+            log.debug(prefix + "output stream closed: " + e.getMessage());
+        } finally {
+            final long dropped = droppedLines.get();
+            if (dropped > 0) {
+                log.warn(prefix + dropped + " output lines were not logged because the log could not keep up");
+            }
+        }
+    }
+
+    private void emit(StringBuilder line, Writer writer, boolean logEnabled) throws IOException {
+        final String text = line.toString();
+        line.setLength(0);
+        buffer.add(text);
+        if (writer != null) {
+            writer.write(text);
+            writer.write('\n');
+        }
+        if (logEnabled && !LOG_QUEUE.offer(new LogLine(this, prefix + text))) {
+            droppedLines.incrementAndGet();
+        }
+    }
+
+    private static final class LogLine {
+
+        private final ProcessOutputPump pump;
+
+        private final String text;
+
+        private LogLine(ProcessOutputPump pump, String text) {
+            this.pump = pump;
+            this.text = text;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.base.Charsets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples CPU time, resident memory, threads and open file descriptors of a process and all of its descendants
+ * from {@code /proc}. All samplers share a single scheduler thread and every sampler reuses its read buffer, so
+ * sampling does not noticeably compete with the processes under test.
+ * <p>
+ * Samples are appended to {@code <name>.csv} in the report directory while the process runs; when sampling ends a
+ * summary is logged and written to {@code <name>.json}. CPU time assumes the usual 100 clock ticks per second.
+ *
+ * @author Thuan Luong
+ */
+final class ProcessResourceSampler {
+
+    private static final File PROC = new File("/proc");
+
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("exec-process-sampler").build());
+
+    private final String name;
+
+    private final long rootPid;
+
+    private final long intervalMillis;
+
+    private final File reportDirectory;
+
+    private final Log log;
+
+    private final byte[] readBuffer = new byte[8192];
+
+    private final StringBuilder text = new StringBuilder(8192);
+
+    private final List<Long> pids = new ArrayList<>();
+
+    private final Deque<Long> pending = new ArrayDeque<>();
+
+    private Writer csv;
+
+    private ScheduledFuture<?> future;
+
+    private boolean finished;
+
+    private long samples;
+
+    private long firstCpuTicks = -1;
+
+    private long lastCpuTicks;
+
+    private long peakRssKb;
+
+    private long totalRssKb;
+
+    private int peakThreads;
+
+    private long totalThreads;
+
+    private int peakFds;
+
+    private long totalFds;
+
+    private int peakProcesses;
+
+    private final long startMillis = System.currentTimeMillis();
+
+    private ProcessResourceSampler(String name, long rootPid, long intervalMillis, File reportDirectory, Log log) {
+        this.name = name;
+        this.rootPid = rootPid;
+        this.intervalMillis = intervalMillis;
+        this.reportDirectory = reportDirectory;
+        this.log = log;
+    }
+
+    /**
+     * @return the running sampler, or {@code null} if sampling is not supported for the process on this platform
+     */
+    static ProcessResourceSampler start(String name, long pid, long intervalMillis, File reportDirectory, Log log) {
+        if (pid <= 0 || !new File(PROC, String.valueOf(pid)).isDirectory()) {
+            log.warn("Resource sampling of process '" + name + "' requires /proc and a known PID, skipping it");
+            return null;
+        }
+        final ProcessResourceSampler sampler = new ProcessResourceSampler(name, pid, intervalMillis, reportDirectory, log);
+        try {
+            Files.createDirectories(reportDirectory.toPath());
+            sampler.csv = new BufferedWriter(new OutputStreamWriter(
+                    Files.newOutputStream(new File(reportDirectory, name + ".csv").toPath()), Charsets.UTF_8));
+            sampler.csv.write("elapsedMillis,processes,cpuMillis,rssKb,threads,fds\n");
+        } catch (IOException e) {
+            log.warn("Could not create resource report for process '" + name + "': " + e.getMessage());
+            sampler.csv = null;
+        }
+        sampler.future = SCHEDULER.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                sampler.sample();
+            }
+        }, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        return sampler;
+    }
+
+    /**
+     * Takes a last sample, stops sampling and reports the summary. Safe to call more than once.
+     */
+    void stop() {
+        try {
+            SCHEDULER.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        sample();
+                    } finally {
+                        finish();
+                    }
+                }
+            }).get();
+        } catch (Exception e) {
+            log.debug("Could not finish resource sampling of process '" + name + "': " + e);
+        }
+    }
+
+    private void sample() {
+        if (finished) {
+            return;
+        }
+        try {
+            sampleProcessTree();
+        } catch (RuntimeException e) {
+            // e.g. a truncated stat file of an exiting process, which must not cancel the scheduled sampling
+            log.debug("Could not sample resources of process '" + name + "': " + e);
+        }
+    }
+
+    private void sampleProcessTree() {
+        collectProcessTree();
+        if (pids.isEmpty()) {
+            finish();
+            return;
+        }
+        long cpuTicks = 0;
+        long rssKb = 0;
+        int threads = 0;
+        int fds = 0;
+        for (Long pid : pids) {
+            final String stat = read(new File(PROC, pid + "/stat"));
+            if (stat == null) {
+                continue;
+            }
+            // fields after the parenthesised command name, starting with field 3 (state)
+            final String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            cpuTicks += Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+            threads += Integer.parseInt(fields[17]);
+            rssKb += statusValueKb(read(new File(PROC, pid + "/status")), "VmRSS:");
+            final String[] fdEntries = new File(PROC, pid + "/fd").list();
+            fds += fdEntries != null ? fdEntries.length : 0;
+        }
+        if (firstCpuTicks < 0) {
+            firstCpuTicks = cpuTicks;
+        }
+        lastCpuTicks = Math.max(lastCpuTicks, cpuTicks);
+        samples++;
+        peakRssKb = Math.max(peakRssKb, rssKb);
+        totalRssKb += rssKb;
+        peakThreads = Math.max(peakThreads, threads);
+        totalThreads += threads;
+        peakFds = Math.max(peakFds, fds);
+        totalFds += fds;
+        peakProcesses = Math.max(peakProcesses, pids.size());
+        if (csv != null) {
+            try {
+                csv.write((System.currentTimeMillis() - startMillis) + "," + pids.size() + "," + ticksToMillis(cpuTicks)
+                        + "," + rssKb + "," + threads + "," + fds + "\n");
+            } catch (IOException e) {
+                csv = null;
+            }
+        }
+    }
+
+    /**
+     * Collects the root process and its descendants into {@link #pids} by following the {@code children} files of
+     * all threads.
+     */
+    private void collectProcessTree() {
+        pids.clear();
+        pending.clear();
+        if (new File(PROC, String.valueOf(rootPid)).isDirectory()) {
+            pending.add(rootPid);
+        }
+        while (!pending.isEmpty()) {
+            final Long pid = pending.poll();
+            pids.add(pid);
+            final String[] tasks = new File(PROC, pid + "/task").list();
+            if (tasks == null) {
+                continue;
+            }
+            for (String task : tasks) {
+                final String children = read(new File(PROC, pid + "/task/" + task + "/children"));
+                if (children == null) {
+                    continue;
+                }
+                for (String child : children.trim().split(" ")) {
+                    if (!child.isEmpty()) {
+                        pending.add(Long.valueOf(child));
+                    }
+                }
+            }
+        }
+    }
+
+    private String read(File file) {
+        text.setLength(0);
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(readBuffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    text.append((char) (readBuffer[i] & 0xff));
+                }
+            }
+            return text.toString();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static long statusValueKb(String status, String key) {
+        if (status == null) {
+            return 0;
+        }
+        final int start = status.indexOf(key);
+        if (start < 0) {
+            return 0;
+        }
+        final int end = status.indexOf('\n', start);
+        final String value = status.substring(start + key.length(), end > 0 ? end : status.length()).trim();
+        final int space = value.indexOf(' ');
+        return Long.parseLong(space > 0 ? value.substring(0, space) : value);
+    }
+
+    private static long ticksToMillis(long ticks) {
+        return ticks * 1000 / CLOCK_TICKS_PER_SECOND;
+    }
+
+    private void finish() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (future != null) {
+            future.cancel(false);
+        }
+        if (csv != null) {
+            try {
+                csv.close();
+            } catch (IOException e) {
+                log.debug("Could not close resource report of process '" + name + "': " + e.getMessage());
+            }
+        }
+        if (samples == 0) {
+            return;
+        }
+        final long elapsedMillis = Math.max(1, System.currentTimeMillis() - startMillis);
+        final long cpuMillis = ticksToMillis(lastCpuTicks - firstCpuTicks);
+        final String summary = String.format(Locale.ROOT,
+                "{\"name\":%s,\"samples\":%d,\"intervalMillis\":%d,\"elapsedMillis\":%d,\"cpuMillis\":%d,"
+                        + "\"avgCpuPercent\":%.1f,\"peakRssKb\":%d,\"avgRssKb\":%d,\"peakThreads\":%d,\"avgThreads\":%d,"
+                        + "\"peakFds\":%d,\"avgFds\":%d,\"peakProcesses\":%d}",
+                Json.quote(name), samples, intervalMillis, elapsedMillis, cpuMillis,
+                cpuMillis * 100.0 / elapsedMillis, peakRssKb, totalRssKb / samples, peakThreads, totalThreads / samples,
+                peakFds, totalFds / samples, peakProcesses);
+        log.info(String.format(Locale.ROOT,
+                "Resources used by process '%s': cpu %d ms (avg %.1f%%), rss peak %d kB avg %d kB, threads peak %d, fds peak %d",
+                name, cpuMillis, cpuMillis * 100.0 / elapsedMillis, peakRssKb, totalRssKb / samples, peakThreads, peakFds));
+        try {
+            Files.write(new File(reportDirectory, name + ".json").toPath(), summary.getBytes(Charsets.UTF_8));
+        } catch (IOException e) {
+            log.warn("Could not write resource summary of process '" + name + "': " + e.getMessage());
+        }
+    }
+}
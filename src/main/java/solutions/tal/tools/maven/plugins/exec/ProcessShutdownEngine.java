@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops a set of processes concurrently. Processes are stopped in waves: a process is only signalled once every
+ * process which declared it as a prerequisite has stopped. Within a wave all processes are signalled in reverse
+ * start order, then waited for concurrently for at most the grace period before being killed.
+ *
+ * @author Thuan Luong
+ */
+final class ProcessShutdownEngine {
+
+    private final Log log;
+
+    private final long gracePeriodMillis;
+
+    private final long killTimeoutMillis;
+
+    ProcessShutdownEngine(Log log, long gracePeriodMillis, long killTimeoutMillis) {
+        this.log = log;
+        this.gracePeriodMillis = gracePeriodMillis;
+        this.killTimeoutMillis = killTimeoutMillis;
+    }
+
+    Log getLog() {
+        return log;
+    }
+
+    /**
+     * @param processExecutors the processes to stop, most recently started first
+     */
+    void stop(List<ProcessExecutor> processExecutors) {
+        if (processExecutors.isEmpty()) {
+            return;
+        }
+        final List<ShutdownResult> results = new ArrayList<>();
+        for (List<ProcessExecutor> wave : waves(processExecutors)) {
+            results.addAll(stopWave(wave));
+        }
+        report(results);
+    }
+
+    /**
+     * Groups the processes by the length of the longest chain of dependents within the given list, so that
+     * dependents always end up in an earlier wave than their prerequisites.
+     */
+    private static List<List<ProcessExecutor>> waves(List<ProcessExecutor> processExecutors) {
+        final Map<ProcessExecutor, Integer> depths = new HashMap<>();
+        for (ProcessExecutor processExecutor : processExecutors) {
+            depths.put(processExecutor, 0);
+        }
+        // relax depth along prerequisite edges; bounded by the number of processes since start-all rejects cycles
+        for (int i = 0; i < processExecutors.size(); i++) {
+            boolean changed = false;
+            for (ProcessExecutor dependent : processExecutors) {
+                for (ProcessExecutor prerequisite : dependent.getPrerequisites()) {
+                    final Integer depth = depths.get(prerequisite);
+                    if (depth != null && depth <= depths.get(dependent)) {
+                        depths.put(prerequisite, depths.get(dependent) + 1);
+                        changed = true;
+                    }
+                }
+            }
+            if (!changed) {
+                break;
+            }
+        }
+
+        final List<List<ProcessExecutor>> waves = new ArrayList<>();
+        for (ProcessExecutor processExecutor : processExecutors) {
+            final int depth = depths.get(processExecutor);
+            while (waves.size() <= depth) {
+                waves.add(new ArrayList<ProcessExecutor>());
+            }
+            waves.get(depth).add(processExecutor);
+        }
+        return waves;
+    }
+
+    private List<ShutdownResult> stopWave(List<ProcessExecutor> wave) {
+        final long startNanos = System.nanoTime();
+        for (ProcessExecutor processExecutor : wave) {
+            log.info("Stopping process: " + processExecutor.getName());
+            processExecutor.stop();
+        }
+
+        final ExecutorService executorService = TaskExecutors.newExecutor("exec-process-stop-", 0);
+        try {
+            final List<Future<ShutdownResult>> futures = new ArrayList<>();
+            for (final ProcessExecutor processExecutor : wave) {
+                futures.add(executorService.submit(new Callable<ShutdownResult>() {
+                    @Override
+                    public ShutdownResult call() {
+                        return awaitTermination(processExecutor, startNanos);
+                    }
+                }));
+            }
+            final List<ShutdownResult> results = new ArrayList<>();
+            for (Future<ShutdownResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (ExecutionException e) {
+                    log.warn("Unexpected error while stopping process", e.getCause());
+                }
+            }
+            return results;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private ShutdownResult awaitTermination(ProcessExecutor processExecutor, long startNanos) {
+        boolean forced = false;
+        boolean stopped = processExecutor.waitFor(gracePeriodMillis, TimeUnit.MILLISECONDS);
+        if (!stopped) {
+            log.warn(String.format("Process '%s' did not stop within %d ms, killing it", processExecutor.getName(), gracePeriodMillis));
+            forced = true;
+            processExecutor.forceStop();
+            stopped = processExecutor.waitFor(killTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        processExecutor.getTimings().record(ProcessTimings.Phase.STOP, elapsedMillis);
+        if (stopped) {
+            log.info(String.format("Stopped process: %s (%d ms%s)", processExecutor.getName(), elapsedMillis, forced ? ", killed" : ""));
+        } else {
+            log.error(String.format("Process '%s' is still running %d ms after it was killed", processExecutor.getName(), elapsedMillis));
+        }
+        return new ShutdownResult(processExecutor.getName(), elapsedMillis, forced, stopped);
+    }
+
+    private void report(List<ShutdownResult> results) {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+        final StringBuilder sb = new StringBuilder("Process shutdown summary:");
+        for (ShutdownResult result : results) {
+            sb.append(String.format("%n  %-30s %8d ms  %s", result.name, result.elapsedMillis,
+                    !result.stopped ? "STILL RUNNING" : result.forced ? "KILLED" : "STOPPED"));
+        }
+        log.info(sb.toString());
+    }
+
+    private static final class ShutdownResult {
+
+        private final String name;
+
+        private final long elapsedMillis;
+
+        private final boolean forced;
+
+        private final boolean stopped;
+
+        private ShutdownResult(String name, long elapsedMillis, boolean forced, boolean stopped) {
+            this.name = name;
+            this.elapsedMillis = elapsedMillis;
+            this.forced = forced;
+            this.stopped = stopped;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Registry of all processes started in this JVM which have not been stopped yet, across every module of the reactor
+ * and every thread of a parallel build, together with the single JVM shutdown hook stopping them, e.g. when the build
+ * fails or is interrupted before reaching {@code stop-all}.
+ * <p>
+ * Maven disposes the plugin class realm before the JVM runs its shutdown hooks, so the hook cannot load any class
+ * from the plugin any more. Installing it therefore loads every class of this package and the Guava classes used
+ * while stopping processes up front.
+ *
+ * @author Thuan Luong
+ */
+final class ProcessShutdownHook {
+
+    private static final Deque<ProcessExecutor> PROCESSES = new ConcurrentLinkedDeque<>();
+
+    private static final AtomicReference<ProcessShutdownEngine> ENGINE = new AtomicReference<>();
+
+    private ProcessShutdownHook() {
+    }
+
+    /**
+     * Registers a process about to be started. The shutdown hook is installed on the first registration and stops
+     * the processes with the engine given then. Processes kept alive are meant to outlive the JVM and are ignored.
+     */
+    static void register(ProcessExecutor processExecutor, ProcessShutdownEngine engine) {
+        if (processExecutor.isKeepAlive()) {
+            return;
+        }
+        if (ENGINE.compareAndSet(null, engine)) {
+            preloadClasses(engine);
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    stopAll();
+                }
+            }, "exec-process-shutdown"));
+        }
+        PROCESSES.push(processExecutor);
+    }
+
+    /**
+     * Removes processes which have been stopped.
+     */
+    static void unregister(Collection<ProcessExecutor> processExecutors) {
+        for (ProcessExecutor processExecutor : processExecutors) {
+            PROCESSES.remove(processExecutor);
+        }
+    }
+
+    private static void stopAll() {
+        final List<ProcessExecutor> processExecutors = new ArrayList<>();
+        ProcessExecutor processExecutor;
+        while ((processExecutor = PROCESSES.poll()) != null) {
+            processExecutors.add(processExecutor);
+        }
+        ENGINE.get().stop(processExecutors);
+    }
+
+    private static void preloadClasses(ProcessShutdownEngine engine) {
+        final ClassLoader classLoader = ProcessShutdownHook.class.getClassLoader();
+        final List<String> classNames = new ArrayList<>();
+        classNames.add(ThreadFactoryBuilder.class.getName());
+        classNames.add(ThreadFactoryBuilder.class.getName() + "$1");
+        try {
+            final String packagePath = ProcessShutdownHook.class.getPackage().getName().replace('.', '/') + '/';
+            final File codeSource = new File(ProcessShutdownHook.class.getProtectionDomain().getCodeSource()
+                    .getLocation().toURI());
+            if (codeSource.isDirectory()) {
+                final String[] fileNames = new File(codeSource, packagePath).list();
+                if (fileNames != null) {
+                    for (String fileName : fileNames) {
+                        addClassName(classNames, packagePath + fileName);
+                    }
+                }
+            } else {
+                try (JarFile jar = new JarFile(codeSource)) {
+                    for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+                        final String entryName = entries.nextElement().getName();
+                        if (entryName.startsWith(packagePath) && entryName.indexOf('/', packagePath.length()) < 0) {
+                            addClassName(classNames, entryName);
+                        }
+                    }
+                }
+            }
+            for (String className : classNames) {
+                Class.forName(className, false, classLoader);
+            }
+            // initialized now, as its initialization looks up JDK methods reflectively
+            TaskExecutors.isVirtual();
+        } catch (URISyntaxException | IOException | ClassNotFoundException e) {
+            engine.getLog().debug("Could not preload the classes needed by the shutdown hook: " + e);
+        }
+    }
+
+    private static void addClassName(List<String> classNames, String path) {
+        if (path.endsWith(".class")) {
+            classNames.add(path.substring(0, path.length() - ".class".length()).replace('/', '.'));
+        }
+    }
+}
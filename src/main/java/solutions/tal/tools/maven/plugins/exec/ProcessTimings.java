@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Time spent in each phase of the lifecycle of a process.
+ *
+ * @author Thuan Luong
+ */
+final class ProcessTimings {
+
+    enum Phase {
+        CLASSPATH_RESOLUTION("classpath"),
+        VALIDATE("validate"),
+        SPAWN("spawn"),
+        READINESS("readiness"),
+        STOP("stop");
+
+        private final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    private final Map<Phase, Long> millis = new EnumMap<>(Phase.class);
+
+    synchronized void record(Phase phase, long elapsedMillis) {
+        final Long previous = millis.get(phase);
+        millis.put(phase, previous != null ? previous + elapsedMillis : elapsedMillis);
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos}, as returned by {@link System#nanoTime()}.
+     */
+    void recordSince(Phase phase, long startNanos) {
+        record(phase, (System.nanoTime() - startNanos) / 1000000L);
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Phase, Long> entry : millis.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(entry.getKey().label).append(' ').append(entry.getValue()).append(" ms");
+        }
+        return sb.toString();
+    }
+
+    synchronized String toJson() {
+        final StringBuilder sb = new StringBuilder("{");
+        for (Map.Entry<Phase, Long> entry : millis.entrySet()) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(Json.quote(entry.getKey().name().toLowerCase(Locale.ROOT))).append(':').append(entry.getValue());
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a process once it is ready: a process exiting before it is asked to stop, unless with code 0 and
+ * {@code allowCleanExit} set, or failing its health check {@code failureThreshold} times in a row, is reported right
+ * away together with its last output lines and {@link ProcessExecutor#getFailure() marked as failed}, so that
+ * {@code stop-all} or {@code check} fail the build. All watchdogs share a single scheduler thread.
+ *
+ * @author Thuan Luong
+ */
+final class ProcessWatchdog {
+
+    private static final int OUTPUT_LINES = 20;
+
+    private static final int OUTPUT_FILE_TAIL_BYTES = 16 * 1024;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("exec-process-watchdog").build());
+
+    private final ProcessExecutor process;
+
+    private final AbstractPollingReadinessCheck.Probe healthProbe;
+
+    private final int failureThreshold;
+
+    private final boolean allowCleanExit;
+
+    private final Log log;
+
+    private ScheduledFuture<?> future;
+
+    private int consecutiveHealthFailures;
+
+    private ProcessWatchdog(ProcessExecutor process, AbstractPollingReadinessCheck.Probe healthProbe,
+                            int failureThreshold, boolean allowCleanExit, Log log) {
+        this.process = process;
+        this.healthProbe = healthProbe;
+        this.failureThreshold = failureThreshold;
+        this.allowCleanExit = allowCleanExit;
+        this.log = log;
+    }
+
+    /**
+     * @param healthCheck check probed on every interval, or {@code null} to only watch for the process exiting
+     */
+    static ProcessWatchdog start(ProcessExecutor process, long intervalMillis, AbstractPollingReadinessCheck healthCheck,
+                                 int failureThreshold, boolean allowCleanExit, Log log) throws MojoExecutionException {
+        final ProcessWatchdog watchdog = new ProcessWatchdog(process,
+                healthCheck != null ? healthCheck.createProbe(log, process) : null, Math.max(1, failureThreshold),
+                allowCleanExit, log);
+        watchdog.future = SCHEDULER.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                watchdog.check();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        return watchdog;
+    }
+
+    void stop() {
+        cancel();
+    }
+
+    private void cancel() {
+        future.cancel(false);
+        if (healthProbe != null) {
+            healthProbe.close();
+        }
+    }
+
+    private void check() {
+        if (!process.isAlive()) {
+            cancel();
+            // checked after the exit, as stopping is requested before the process is signalled
+            if (process.isStopRequested()) {
+                return;
+            }
+            final int exitCode = process.exitValue();
+            if (exitCode == 0 && allowCleanExit) {
+                log.info(String.format("Process '%s' has exited with code 0", process.getName()));
+            } else {
+                fail(String.format("Process '%s' exited unexpectedly with code %d", process.getName(), exitCode));
+            }
+            return;
+        }
+        if (healthProbe == null) {
+            return;
+        }
+        boolean healthy;
+        try {
+            healthy = healthProbe.isReady();
+        } catch (MojoExecutionException | RuntimeException e) {
+            log.debug("Health check of process '" + process.getName() + "' failed: " + e.getMessage());
+            healthy = false;
+        }
+        consecutiveHealthFailures = healthy ? 0 : consecutiveHealthFailures + 1;
+        if (consecutiveHealthFailures >= failureThreshold && !process.isStopRequested()) {
+            cancel();
+            fail(String.format("Process '%s' failed its health check %d times in a row", process.getName(),
+                    consecutiveHealthFailures));
+        }
+    }
+
+    private void fail(String message) {
+        final List<String> lastLines = lastOutputLines();
+        final String failure = lastLines.isEmpty() ? message
+                : message + ", last output:\n  " + Joiner.on("\n  ").join(lastLines);
+        process.recordFailure(failure);
+        log.error(failure);
+    }
+
+    private List<String> lastOutputLines() {
+        if (process.getOutputBuffer() != null) {
+            return process.getOutputBuffer().tail(OUTPUT_LINES);
+        }
+        final File outputFile = process.getOutputFile();
+        if (outputFile == null || !outputFile.isFile()) {
+            return new ArrayList<>();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(outputFile, "r")) {
+            final long start = Math.max(0, file.length() - OUTPUT_FILE_TAIL_BYTES);
+            final byte[] bytes = new byte[(int) (file.length() - start)];
+            file.seek(start);
+            file.readFully(bytes);
+            final List<String> lines = new ArrayList<>(Arrays.asList(new String(bytes, Charsets.UTF_8).split("\r?\n")));
+            if (start > 0 && !lines.isEmpty()) {
+                // the first line is most likely incomplete
+                lines.remove(0);
+            }
+            return lines.subList(Math.max(0, lines.size() - OUTPUT_LINES), lines.size());
+        } catch (IOException e) {
+            log.debug("Could not read output file " + outputFile + ": " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * A process started by an earlier build and kept alive, presented as a {@link Process} so that it is managed like a
+ * process started by this build. Its output goes to its output file, and its exit code cannot be known: once it has
+ * exited, {@link #exitValue()} reports {@value #EXIT_UNKNOWN}.
+ *
+ * @author Thuan Luong
+ */
+final class ReattachedProcess extends Process {
+
+    static final int EXIT_UNKNOWN = -1;
+
+    private final ProcessHandle handle;
+
+    ReattachedProcess(ProcessHandle handle) {
+        this.handle = handle;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        };
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        try {
+            handle.onExit().get();
+        } catch (ExecutionException e) {
+            // onExit() does not complete exceptionally
+        }
+        return EXIT_UNKNOWN;
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            handle.onExit().get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            return !handle.isAlive();
+        }
+    }
+
+    @Override
+    public int exitValue() {
+        if (handle.isAlive()) {
+            throw new IllegalThreadStateException("Process " + handle.pid() + " has not exited");
+        }
+        return EXIT_UNKNOWN;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return handle.isAlive();
+    }
+
+    @Override
+    public void destroy() {
+        handle.destroy();
+    }
+
+    @Override
+    public Process destroyForcibly() {
+        handle.destroyForcibly();
+        return this;
+    }
+
+    @Override
+    public long pid() {
+        return handle.pid();
+    }
+
+    @Override
+    public ProcessHandle toHandle() {
+        return handle;
+    }
+
+    @Override
+    public CompletableFuture<Process> onExit() {
+        return handle.onExit().thenApply(new Function<ProcessHandle, Process>() {
+            @Override
+            public Process apply(ProcessHandle exited) {
+                return ReattachedProcess.this;
+            }
+        });
+    }
+
+    @Override
+    public Stream<ProcessHandle> children() {
+        return handle.children();
+    }
+
+    @Override
+    public Stream<ProcessHandle> descendants() {
+        return handle.descendants();
+    }
+}
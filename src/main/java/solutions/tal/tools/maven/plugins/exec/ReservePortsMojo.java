@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reserves free ports and publishes each of them as a project property, so that later configuration refers to them
+ * as {@code ${name}}: arguments, environment variables and system properties of processes, readiness checks and the
+ * configuration of the tests. A name given as a user property ({@code -Dname=port}) keeps that port.
+ *
+ * @author Thuan Luong
+ */
+@Mojo(name = "reserve-ports", defaultPhase = LifecyclePhase.INITIALIZE, threadSafe = true)
+public class ReservePortsMojo extends AbstractMojo {
+
+    @Parameter(defaultValue = "${project}", readonly = true)
+    private MavenProject project;
+
+    @Parameter(defaultValue = "${session}", readonly = true)
+    private MavenSession session;
+
+    /**
+     * Names of the project properties receiving a reserved port.
+     */
+    @Parameter(required = true)
+    private List<String> portNames;
+
+    /**
+     * Lowest port to reserve. With {@code maxPort} zero as well, ports come from the ephemeral port range.
+     */
+    @Parameter(defaultValue = "0")
+    private int minPort;
+
+    /**
+     * Highest port to reserve.
+     */
+    @Parameter(defaultValue = "0")
+    private int maxPort;
+
+    /**
+     * Time during which a reserved port is not handed out again to any build on this host, which should cover the
+     * time until the process using it has bound it.
+     */
+    @Parameter(defaultValue = "300000")
+    private long portLeaseMillis;
+
+    /**
+     * Directory shared by all builds on this host which holds the port reservations.
+     */
+    @Parameter(defaultValue = "${java.io.tmpdir}/exec-process-ports")
+    private File portLockDirectory;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        final List<String> names = new ArrayList<>();
+        for (String name : portNames) {
+            final String userPort = session.getUserProperties().getProperty(name);
+            if (userPort != null) {
+                getLog().info("Using port " + userPort + " given for " + name);
+            } else {
+                names.add(name);
+            }
+        }
+        if (names.isEmpty()) {
+            return;
+        }
+        final Map<String, Integer> ports = PortAllocator.reserve(names, minPort, maxPort, portLeaseMillis,
+                portLockDirectory);
+        for (Map.Entry<String, Integer> port : ports.entrySet()) {
+            project.getProperties().setProperty(port.getKey(), String.valueOf(port.getValue()));
+            getLog().info("Reserved port " + port.getValue() + " for " + port.getKey());
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Output file of a pumped process which is rotated once it exceeds a size. The current segment always is the plain
+ * text file itself, rotated segments are renamed to {@code <file>.<n>} and gzip compressed to {@code <file>.<n>.gz}
+ * on a shared background thread, which afterwards deletes the oldest segments until all segments, including the
+ * current one at its maximum size, fit into the total size. Segments of an earlier run are deleted on open, as the
+ * output file itself is truncated.
+ * <p>
+ * Sizes are checked at line ends against the bytes handed to the file, so a segment can exceed the maximum size by
+ * the encoder buffer and one line.
+ *
+ * @author Thuan Luong
+ */
+final class RotatingOutputFile extends Writer {
+
+    private static final ExecutorService COMPRESSOR = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("exec-process-output-compressor").build());
+
+    private final File file;
+
+    private final long maxFileSize;
+
+    private final long maxTotalSize;
+
+    private final Log log;
+
+    private final Pattern segmentPattern;
+
+    private CountingOutputStream counter;
+
+    private Writer writer;
+
+    private int segment;
+
+    private RotatingOutputFile(File file, long maxFileSize, long maxTotalSize, Log log) throws IOException {
+        this.file = file;
+        this.maxFileSize = maxFileSize;
+        this.maxTotalSize = maxTotalSize;
+        this.log = log;
+        this.segmentPattern = Pattern.compile(Pattern.quote(file.getName()) + "\\.(\\d+)(\\.gz)?");
+        for (File oldSegment : segments()) {
+            Files.deleteIfExists(oldSegment.toPath());
+        }
+        openSegment();
+    }
+
+    /**
+     * Opens {@code file} for writing, rotating it once it exceeds {@code maxFileSize} bytes when that is positive.
+     * A positive {@code maxTotalSize} caps the size of all segments together.
+     */
+    static Writer open(File file, long maxFileSize, long maxTotalSize, Log log) throws IOException {
+        if (maxFileSize <= 0) {
+            return new BufferedWriter(new OutputStreamWriter(openTruncated(file), Charsets.UTF_8));
+        }
+        return new RotatingOutputFile(file, maxFileSize, maxTotalSize, log);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) throws IOException {
+        writer.write(chars, offset, length);
+        if (length > 0 && chars[offset + length - 1] == '\n' && counter.getCount() >= maxFileSize) {
+            rotate();
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        writer.write(c);
+        if (c == '\n' && counter.getCount() >= maxFileSize) {
+            rotate();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private void openSegment() throws IOException {
+        counter = new CountingOutputStream(openTruncated(file));
+        // no buffer on top of the encoder, so that the count only lags behind by the encoder buffer
+        writer = new OutputStreamWriter(counter, Charsets.UTF_8);
+    }
+
+    private void rotate() throws IOException {
+        writer.close();
+        final File rotated = new File(file.getParentFile(), file.getName() + "." + ++segment);
+        Files.move(file.toPath(), rotated.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        openSegment();
+        COMPRESSOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                compress(rotated);
+                enforceTotalSize();
+            }
+        });
+    }
+
+    private void compress(File rotated) {
+        final File compressed = new File(rotated.getParentFile(), rotated.getName() + ".gz");
+        final File temporary = new File(rotated.getParentFile(), rotated.getName() + ".gz.tmp");
+        try (InputStream in = Files.newInputStream(rotated.toPath());
+             OutputStream out = new GZIPOutputStream(openTruncated(temporary))) {
+            ByteStreams.copy(in, out);
+        } catch (IOException e) {
+            // the segment may already have been deleted to enforce the total size
+            if (rotated.exists()) {
+                log.warn("Could not compress output file segment " + rotated + ": " + e.getMessage());
+            }
+            temporary.delete();
+            return;
+        }
+        try {
+            Files.move(temporary.toPath(), compressed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(rotated.toPath());
+        } catch (IOException e) {
+            log.warn("Could not replace output file segment " + rotated + " by its compressed copy: " + e.getMessage());
+        }
+    }
+
+    private void enforceTotalSize() {
+        if (maxTotalSize <= 0) {
+            return;
+        }
+        final List<File> segments = segments();
+        long totalSize = maxFileSize;
+        for (File rotated : segments) {
+            totalSize += rotated.length();
+        }
+        for (File oldest : segments) {
+            if (totalSize <= maxTotalSize) {
+                break;
+            }
+            final long size = oldest.length();
+            if (oldest.delete()) {
+                totalSize -= size;
+            } else {
+                log.warn("Could not delete output file segment " + oldest);
+            }
+        }
+    }
+
+    /**
+     * @return the rotated segments, compressed or not, from oldest to newest
+     */
+    private List<File> segments() {
+        final List<File> segments = new ArrayList<>();
+        final File[] files = file.getAbsoluteFile().getParentFile().listFiles();
+        if (files != null) {
+            for (File candidate : files) {
+                if (segmentPattern.matcher(candidate.getName()).matches()) {
+                    segments.add(candidate);
+                }
+            }
+        }
+        Collections.sort(segments, new Comparator<File>() {
+            @Override
+            public int compare(File left, File right) {
+                return Long.compare(segmentNumber(left), segmentNumber(right));
+            }
+        });
+        return segments;
+    }
+
+    private long segmentNumber(File segment) {
+        final Matcher matcher = segmentPattern.matcher(segment.getName());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+    private static OutputStream openTruncated(File file) throws IOException {
+        return new BufferedOutputStream(Files.newOutputStream(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    }
+}
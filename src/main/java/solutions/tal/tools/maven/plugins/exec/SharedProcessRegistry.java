@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Processes shared by all modules of a reactor build. The plugin class realm, and with it this registry, is shared
+ * between the modules of a build, so a process identified by its configuration fingerprint is only started by the
+ * first module which needs it. Every module holding a reference releases it when it stops its processes; once no
+ * module holds a reference any more, and no module which might still acquire one is left to build, the process is
+ * handed back for stopping.
+ *
+ * @author Thuan Luong
+ */
+final class SharedProcessRegistry {
+
+    private static final ConcurrentMap<String, SharedProcess> PROCESSES = new ConcurrentHashMap<>();
+
+    private static final ConcurrentMap<String, String> FINGERPRINTS_BY_NAME = new ConcurrentHashMap<>();
+
+    private SharedProcessRegistry() {
+    }
+
+    interface Starter {
+
+        void start(ProcessExecutor processExecutor) throws MojoExecutionException;
+    }
+
+    /**
+     * Acquires a reference to the process with the given fingerprint for {@code user}, starting {@code candidate}
+     * through {@code starter} when no live process with that fingerprint exists yet. A process configured under the
+     * name of a shared process with another fingerprint is logged, as it is started separately.
+     *
+     * @return the shared process, which is {@code candidate} if it had to be started
+     */
+    static ProcessExecutor acquire(String fingerprint, String user, ProcessExecutor candidate, Log log,
+                                   Starter starter) throws MojoExecutionException {
+        final String previousFingerprint = FINGERPRINTS_BY_NAME.putIfAbsent(candidate.getName(), fingerprint);
+        if (previousFingerprint != null && !previousFingerprint.equals(fingerprint)) {
+            log.warn(String.format("Shared process '%s' of %s is configured differently than in another module, "
+                    + "starting a separate process", candidate.getName(), user));
+        }
+        SharedProcess shared = PROCESSES.get(fingerprint);
+        if (shared == null) {
+            final SharedProcess created = new SharedProcess();
+            shared = PROCESSES.putIfAbsent(fingerprint, created);
+            if (shared == null) {
+                shared = created;
+            }
+        }
+        synchronized (shared) {
+            if (shared.processExecutor == null || !shared.processExecutor.isAlive()) {
+                shared.processExecutor = null;
+                try {
+                    starter.start(candidate);
+                } catch (MojoExecutionException | RuntimeException e) {
+                    candidate.forceStop();
+                    throw e;
+                }
+                shared.processExecutor = candidate;
+            }
+            shared.users.add(user);
+            return shared.processExecutor;
+        }
+    }
+
+    /**
+     * Releases the references {@code user} holds on the given processes.
+     *
+     * @param morePotentialUsers whether modules which may still acquire shared processes are left to build
+     * @return the processes which are no longer referenced and should now be stopped
+     */
+    static List<ProcessExecutor> release(String user, Iterable<String> fingerprints, boolean morePotentialUsers) {
+        for (String fingerprint : fingerprints) {
+            final SharedProcess shared = PROCESSES.get(fingerprint);
+            if (shared != null) {
+                synchronized (shared) {
+                    shared.users.remove(user);
+                }
+            }
+        }
+        final List<ProcessExecutor> unreferenced = new ArrayList<>();
+        if (!morePotentialUsers) {
+            for (Iterator<Map.Entry<String, SharedProcess>> it = PROCESSES.entrySet().iterator(); it.hasNext(); ) {
+                final SharedProcess shared = it.next().getValue();
+                synchronized (shared) {
+                    if (shared.users.isEmpty()) {
+                        it.remove();
+                        if (shared.processExecutor != null) {
+                            unreferenced.add(shared.processExecutor);
+                        }
+                    }
+                }
+            }
+        }
+        return unreferenced;
+    }
+
+    /**
+     * @return the shared process with the given fingerprint, or {@code null} if there is none
+     */
+    static ProcessExecutor get(String fingerprint) {
+        final SharedProcess shared = PROCESSES.get(fingerprint);
+        if (shared == null) {
+            return null;
+        }
+        synchronized (shared) {
+            return shared.processExecutor;
+        }
+    }
+
+    private static final class SharedProcess {
+
+        private final Set<String> users = new HashSet<>();
+
+        private ProcessExecutor processExecutor;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Starts several processes, honouring the {@code dependsOn} declarations between them. Processes whose
+ * prerequisites are all ready are started concurrently; a process is only started once every process it depends
+ * on has passed its readiness check.
+ *
+ * @author Thuan Luong
+ */
+@Mojo(name = "start-all", defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST, threadSafe = true)
+public class StartAllProcessExecutorMojo extends AbstractStartProcessMojo {
+
+    @Parameter(required = true)
+    private List<ProcessDefinition> processes;
+
+    /**
+     * Maximum number of processes started concurrently, 0 means no limit.
+     */
+    @Parameter(defaultValue = "0")
+    private int threads;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        reapLeftoverProcesses();
+        final ProcessGraph graph = ProcessGraph.of(processes);
+
+        final Map<String, ProcessExecutor> processExecutors = new LinkedHashMap<>();
+        for (ProcessDefinition definition : graph.definitions()) {
+            final CommandLineMode commandLineMode = definition.getCommandLineMode();
+            final long classpathStart = System.nanoTime();
+            final List<String> commandArguments = buildCommandArguments(definition.getName(), commandLineMode,
+                    definition.getArguments(), definition.getAdditionalClasspathElements(), definition.getDependencies());
+            final ProcessExecutor processExecutor = withResourceSamplingIfRequired(ProcessExecutor
+                    .create(definition.getName(), definition.getExecutable(), commandArguments)
+                    .withOutputFile(definition.getOutputFile())
+                    .withOutputPump(definition.isPumpOutput() ? definition.getOutputLogLevel() : null,
+                            definition.getOutputBufferLines())
+                    .withOutputRotation(definition.getMaxOutputFileSize(), definition.getMaxOutputTotalSize())
+                    .withArgumentFile(commandLineMode == CommandLineMode.ARGUMENT_FILE ? argumentFile(definition.getName()) : null)
+                    .withEnvironmentVariables(definition.getEnvironmentVariables())
+                    .withSystemProperties(definition.getSystemProperties())
+                    .withCpuAffinity(definition.getCpuSet(), definition.getCpus())
+                    .withNiceness(definition.getNiceness()), definition.isSampleResources());
+            processExecutor.getTimings().recordSince(ProcessTimings.Phase.CLASSPATH_RESOLUTION, classpathStart);
+            if (definition.isAppCds()) {
+                processExecutor.withJvmOptions(appCdsOptions(definition.getName(), definition.getExecutable(),
+                        commandArguments, definition.getAdditionalClasspathElements(), definition.getDependencies()));
+            }
+            processExecutors.put(definition.getName(), withKeepAliveIfRequired(withClasspathIfRequired(processExecutor,
+                    commandLineMode, definition.getArguments(), definition.getAdditionalClasspathElements(),
+                    definition.getDependencies())));
+        }
+        for (ProcessDefinition definition : graph.definitions()) {
+            final List<ProcessExecutor> prerequisites = new ArrayList<>();
+            for (String prerequisite : definition.getDependsOn()) {
+                prerequisites.add(processExecutors.get(prerequisite));
+            }
+            processExecutors.get(definition.getName()).withPrerequisites(prerequisites);
+        }
+
+        final int maxConcurrency = threads > 0 ? Math.min(threads, processExecutors.size()) : processExecutors.size();
+        final ExecutorService executorService = TaskExecutors.newExecutor("exec-process-start-", Math.max(1, maxConcurrency));
+        try {
+            startInDependencyOrder(graph, processExecutors, new ExecutorCompletionService<String>(executorService));
+        } finally {
+            executorService.shutdownNow();
+        }
+        waitForInterruptIfRequired();
+    }
+
+    private void startInDependencyOrder(ProcessGraph graph, Map<String, ProcessExecutor> processExecutors,
+                                        CompletionService<String> completionService) throws MojoExecutionException {
+        final Map<String, Integer> remainingPrerequisites = new HashMap<>();
+        int running = 0;
+        for (ProcessDefinition definition : graph.definitions()) {
+            remainingPrerequisites.put(definition.getName(), definition.getDependsOn().size());
+            if (definition.getDependsOn().isEmpty()) {
+                submit(definition, processExecutors.get(definition.getName()), completionService);
+                running++;
+            }
+        }
+
+        while (running > 0) {
+            final String started;
+            try {
+                started = completionService.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while starting processes", e);
+            } catch (ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (cause instanceof MojoExecutionException) {
+                    throw (MojoExecutionException) cause;
+                }
+                throw new MojoExecutionException(cause.getMessage(), cause);
+            }
+            running--;
+            for (String dependent : graph.dependentsOf(started)) {
+                final int count = remainingPrerequisites.get(dependent) - 1;
+                remainingPrerequisites.put(dependent, count);
+                if (count == 0) {
+                    submit(graph.get(dependent), processExecutors.get(dependent), completionService);
+                    running++;
+                }
+            }
+        }
+    }
+
+    private void submit(final ProcessDefinition definition, final ProcessExecutor processExecutor,
+                        CompletionService<String> completionService) {
+        // registered from the calling thread so that the process stack keeps a valid start order
+        registerProcess(processExecutor);
+        completionService.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                startProcess(processExecutor, deriveWorkingDir(definition.getWorkingDir()), definition.getReadinessCheck(),
+                        definition.getHealthCheck());
+                return definition.getName();
+            }
+        });
+    }
+}
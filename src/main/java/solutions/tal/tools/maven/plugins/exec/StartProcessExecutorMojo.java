@@ -16,50 +16,30 @@
 
 package solutions.tal.tools.maven.plugins.exec;
 
-import com.google.common.base.Function;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Sets;
-import org.apache.maven.artifact.Artifact;
 import org.apache.maven.model.Dependency;
-import org.apache.maven.model.Exclusion;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.eclipse.aether.RepositorySystem;
-import org.eclipse.aether.RepositorySystemSession;
-import org.eclipse.aether.artifact.DefaultArtifact;
-import org.eclipse.aether.collection.CollectRequest;
-import org.eclipse.aether.repository.RemoteRepository;
-import org.eclipse.aether.resolution.ArtifactResult;
-import org.eclipse.aether.resolution.DependencyRequest;
-import org.eclipse.aether.resolution.DependencyResolutionException;
-import org.eclipse.aether.resolution.DependencyResult;
-import org.eclipse.aether.util.filter.DependencyFilterUtils;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
 
 /**
  * @author Thuan Luong
  */
-@Mojo(name = "start", defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST)
-public class StartProcessExecutorMojo extends AbstractProcessExecutorMojo {
-
-    @Component
-    private RepositorySystem repositorySystem;
-
-    @Parameter(defaultValue = "${repositorySystemSession}", readonly = true)
-    private RepositorySystemSession repositorySystemSession;
-
-    @Parameter(defaultValue = "${project.remoteProjectRepositories}", readonly = true)
-    private List<RemoteRepository> remoteProjectRepositories;
+@Mojo(name = "start", defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST, threadSafe = true)
+public class StartProcessExecutorMojo extends AbstractStartProcessMojo {
 
     @Parameter
     private String executable;
@@ -91,98 +71,277 @@ public class StartProcessExecutorMojo extends AbstractProcessExecutorMojo {
     @Parameter
     private ApplicationReadiness readinessCheck;
 
+    /**
+     * Check probed periodically while the process runs, any readiness check except the fixed wait time. Its timeout
+     * and backoff settings do not apply.
+     */
+    @Parameter
+    private AbstractPollingReadinessCheck healthCheck;
+
+    @Parameter(defaultValue = "INLINE")
+    private CommandLineMode commandLineMode;
+
+    /**
+     * Forward the output of the process to the Maven log, prefixed with the process name, instead of inheriting
+     * the console. The output file, if configured, still receives a copy.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean pumpOutput;
+
+    @Parameter(defaultValue = "INFO")
+    private LogLevel outputLogLevel;
+
+    /**
+     * Number of output lines of a pumped process kept in memory.
+     */
+    @Parameter(defaultValue = "1000")
+    private int outputBufferLines;
+
+    /**
+     * Rotate the output file once it exceeds this number of bytes, compressing the rotated segments. The output is
+     * then pumped, but only forwarded to the Maven log with {@code pumpOutput}. Zero disables rotation.
+     */
+    @Parameter(defaultValue = "0")
+    private long maxOutputFileSize;
+
+    /**
+     * Maximum number of bytes of all segments of a rotated output file together, the oldest segments are deleted
+     * beyond it. Zero keeps all segments.
+     */
+    @Parameter(defaultValue = "0")
+    private long maxOutputTotalSize;
+
+    /**
+     * Share the process with the other modules of the reactor: a process launched with the same executable,
+     * arguments, system properties and environment variables is only started once per build and stopped after the
+     * last module using this plugin has stopped its processes. It runs in the working directory and writes into the
+     * output file of the module starting it.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean shared;
+
+    /**
+     * Sample CPU, memory, thread and file descriptor usage of the process and its descendants from {@code /proc}.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean sampleResources;
+
+    /**
+     * Speed up the startup of a Java process through an application class data sharing archive, created
+     * from the classes loaded by the first run with a given classpath and used by later runs. Requires the executable
+     * to be a JDK 10 or later launcher and a {@code -cp} argument.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean appCds;
+
+    /**
+     * Run this class inside the Maven JVM instead of forking a process: its {@code main} method is called with the
+     * arguments, from a class loader over the dependencies and additional classpath elements. Saves the startup of a
+     * JVM for lightweight stubs, which must not call {@code System.exit}. The executable, environment variables,
+     * system properties and output settings do not apply.
+     */
+    @Parameter
+    private String mainClass;
+
+    /**
+     * Static no-argument method of the {@code mainClass} which stops it. Without one, the threads of the main class
+     * are interrupted.
+     */
+    @Parameter
+    private String shutdownMethod;
+
+    /**
+     * CPUs the process is pinned to, as a list understood by {@code taskset -c}, e.g. {@code 2-3,6}.
+     */
+    @Parameter
+    private String cpuSet;
+
+    /**
+     * Number of CPUs the process is pinned to, chosen when it starts among the CPUs least used by the other processes
+     * of the build, so that they do not compete for the same CPUs. Ignored with a {@code cpuSet}, 0 disables pinning.
+     */
+    @Parameter(defaultValue = "0")
+    private int cpus;
+
+    /**
+     * Increment of the nice level of the process, a positive value lowering its priority below the one of Maven and
+     * the test forks.
+     */
+    @Parameter
+    private Integer niceness;
+
+    /**
+     * Number of replicas of the process, started concurrently. The {@code @{instance}} placeholder in the name,
+     * output file, arguments, environment variables and system properties is replaced with the index of the replica,
+     * counted from zero. Without a placeholder, the index is appended to the name and the output file name.
+     */
+    @Parameter(defaultValue = "1")
+    private int instances;
+
+    /**
+     * Number of replicas which must be ready before the build continues, 0 means all of them. The other replicas keep
+     * starting in the background.
+     */
+    @Parameter(defaultValue = "0")
+    private int readyInstances;
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
-        final List<String> commandArguments = new ArrayList<>();
-        for (Object argument : arguments) {
-            if (argument instanceof Classpath) {
-                commandArguments.add(buildClasspathStringArgument());
-            } else if (argument instanceof String) {
-                commandArguments.add((String) argument);
+        if (instances < 1) {
+            throw new MojoExecutionException("instances must be at least 1, got " + instances);
+        }
+        reapLeftoverProcesses();
+        final File processWorkingDir = deriveWorkingDir(workingDir);
+        if (instances > 1) {
+            if (shared) {
+                throw new MojoExecutionException("A shared process cannot be started as several instances");
             }
+            startInstances(processWorkingDir);
+            waitForInterruptIfRequired();
+            return;
         }
-        final ProcessExecutor processExecutor = ProcessExecutor
-                .create(name, executable, commandArguments)
-                .withOutputFile(outputFile)
-                .withEnvironmentVariables(environmentVariables)
-                .withSystemProperties(systemProperties);
 
-        PluginExecutionStateHolder.addProcess(processExecutor, getPluginContext());
-
-        getLog().info("Starting process: " + name);
-        processExecutor.execute(deriveWorkingDir(workingDir), getLog());
-        if (readinessCheck != null) {
-            readinessCheck.waitForReadiness(getLog(), name);
+        final ProcessExecutor processExecutor = createProcessExecutor(0);
+        if (shared) {
+            final String fingerprint = processExecutor.configurationFingerprint();
+            final ProcessExecutor sharedProcess = SharedProcessRegistry.acquire(fingerprint, project.getId(), processExecutor,
+                    getLog(),
+                    new SharedProcessRegistry.Starter() {
+                        @Override
+                        public void start(ProcessExecutor processExecutor) throws MojoExecutionException {
+                            ProcessShutdownHook.register(processExecutor, newShutdownEngine());
+                            startProcess(processExecutor, processWorkingDir, readinessCheck, healthCheck);
+                        }
+                    });
+            PluginExecutionStateHolder.addSharedProcess(fingerprint, getPluginContext());
+            if (sharedProcess != processExecutor) {
+                getLog().info("Reusing shared process: " + sharedProcess.getName());
+            }
+        } else {
+            registerProcess(processExecutor);
+            startProcess(processExecutor, processWorkingDir, readinessCheck, healthCheck);
         }
-        getLog().info("Started process: " + name);
         waitForInterruptIfRequired();
     }
 
-    private File deriveWorkingDir(File workingDir) {
-        return workingDir != null ? workingDir : new File(project.getBuild().getOutputDirectory());
-    }
-
-    private String buildClasspathStringArgument() throws MojoExecutionException {
-        final List<String> runtimeClasspathElements = new ArrayList<>();
-        if (additionalClasspathElements != null) {
-            runtimeClasspathElements.addAll(additionalClasspathElements);
+    /**
+     * Starts all replicas concurrently and waits until {@code readyInstances} of them are ready. Fails as soon as too
+     * many replicas have failed to reach that number.
+     */
+    private void startInstances(final File processWorkingDir) throws MojoExecutionException {
+        final int quorum = readyInstances > 0 ? Math.min(readyInstances, instances) : instances;
+        final List<ProcessExecutor> replicas = new ArrayList<>(instances);
+        for (int instance = 0; instance < instances; instance++) {
+            replicas.add(createProcessExecutor(instance));
         }
 
-        augmentClasspathElementsForDependencies(runtimeClasspathElements);
-
-        final StringBuilder sb = new StringBuilder();
-        final Iterator<String> it = runtimeClasspathElements.iterator();
-        while (it.hasNext()) {
-            sb.append(it.next());
-            if (it.hasNext()) {
-                sb.append(File.pathSeparatorChar);
+        final ExecutorService executorService = TaskExecutors.newExecutor("exec-process-instance-", 0);
+        final CompletionService<ProcessExecutor> completionService = new ExecutorCompletionService<>(executorService);
+        try {
+            for (final ProcessExecutor replica : replicas) {
+                // registered from the calling thread so that the process stack keeps a valid start order
+                registerProcess(replica);
+                completionService.submit(new Callable<ProcessExecutor>() {
+                    @Override
+                    public ProcessExecutor call() throws Exception {
+                        try {
+                            startProcess(replica, processWorkingDir, readinessCheck, healthCheck);
+                        } catch (MojoExecutionException e) {
+                            getLog().warn("Instance '" + replica.getName() + "' failed to start: " + e.getMessage());
+                            throw e;
+                        }
+                        return replica;
+                    }
+                });
             }
-        }
-        return sb.toString();
-    }
 
-    private void augmentClasspathElementsForDependencies(List<String> runtimeClasspathElements) throws MojoExecutionException {
-        if (dependencies != null) {
-            try {
-                for (Dependency dependency : dependencies) {
-                    final org.eclipse.aether.graph.Dependency rootDependency = toAetherDependency(dependency);
-                    final CollectRequest collectRequest = new CollectRequest(rootDependency, remoteProjectRepositories);
-                    final DependencyRequest dependencyRequest =
-                            new DependencyRequest(collectRequest, DependencyFilterUtils.classpathFilter(Artifact.SCOPE_RUNTIME));
-
-                    final DependencyResult result = repositorySystem.resolveDependencies(repositorySystemSession, dependencyRequest);
-                    if (result.getCollectExceptions().isEmpty()) {
-                        final List<ArtifactResult> resolvedArtifactResults = result.getArtifactResults();
-                        for (ArtifactResult resolvedArtifactResult : resolvedArtifactResults) {
-                            runtimeClasspathElements.add(resolvedArtifactResult.getArtifact().getFile().getAbsolutePath());
-                        }
-                    } else {
-                        throw new MojoExecutionException("Failed to resolve dependencies for: " + dependency);
+            int ready = 0;
+            int failed = 0;
+            while (ready < quorum) {
+                try {
+                    completionService.take().get();
+                    ready++;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new MojoExecutionException("Interrupted while starting instances of '" + name + "'", e);
+                } catch (ExecutionException e) {
+                    failed++;
+                    if (instances - failed < quorum) {
+                        throw new MojoExecutionException(String.format("%d of %d instances of '%s' failed to start, "
+                                + "%d must be ready", failed, instances, name, quorum), e.getCause());
                     }
                 }
-            } catch (DependencyResolutionException e) {
-                throw new MojoExecutionException(e.getMessage(), e);
             }
+            getLog().info(String.format("%d of %d instances of '%s' are ready", ready, instances, name));
+        } finally {
+            // replicas beyond the quorum keep starting, they are stopped with the other processes or, when stopped
+            // before spawning, do not start at all
+            executorService.shutdown();
         }
     }
 
+    private ProcessExecutor createProcessExecutor(int instance) throws MojoExecutionException {
+        if (mainClass != null) {
+            return createInJvmProcessExecutor(instance).withInstance(instance);
+        }
+        return withKeepAliveIfRequired(withClasspathIfRequired(createForkedProcessExecutor(instance), commandLineMode,
+                arguments, additionalClasspathElements, dependencies)).withInstance(instance);
+    }
 
-    private static org.eclipse.aether.graph.Dependency toAetherDependency(Dependency dependency) {
-        final org.eclipse.aether.artifact.Artifact artifact = new DefaultArtifact(
-                dependency.getGroupId(),
-                dependency.getArtifactId(),
-                dependency.getClassifier(),
-                dependency.getType(),
-                dependency.getVersion());
-        final org.eclipse.aether.graph.Dependency aetherDependency =
-                new org.eclipse.aether.graph.Dependency(artifact, Artifact.SCOPE_RUNTIME);
-        return aetherDependency.setExclusions(Sets.newHashSet(Iterables.transform(dependency.getExclusions(),
-                new Function<Exclusion, org.eclipse.aether.graph.Exclusion>() {
-                    @Override
-                    public org.eclipse.aether.graph.Exclusion apply(Exclusion input) {
-                        return new org.eclipse.aether.graph.Exclusion(input.getGroupId(), input.getArtifactId(), "*", "*");
-                    }
-                })));
+    private ProcessExecutor createForkedProcessExecutor(int instance) throws MojoExecutionException {
+        final String name = ProcessInstances.resolveName(this.name, instance, instances);
+        final long classpathStart = System.nanoTime();
+        final List<String> commandArguments = ProcessInstances.resolveAll(buildCommandArguments(name, commandLineMode,
+                arguments, additionalClasspathElements, dependencies), instance);
+        final ProcessExecutor processExecutor = withResourceSamplingIfRequired(ProcessExecutor
+                .create(name, executable, commandArguments)
+                .withOutputFile(ProcessInstances.resolveFile(outputFile, instance, instances))
+                .withOutputPump(pumpOutput ? outputLogLevel : null, outputBufferLines)
+                .withOutputRotation(maxOutputFileSize, maxOutputTotalSize)
+                .withArgumentFile(commandLineMode == CommandLineMode.ARGUMENT_FILE ? argumentFile(name) : null)
+                .withEnvironmentVariables(ProcessInstances.resolveValues(environmentVariables, instance))
+                .withSystemProperties(ProcessInstances.resolveValues(systemProperties, instance))
+                .withCpuAffinity(cpuSet, cpus)
+                .withNiceness(niceness), sampleResources);
+        processExecutor.getTimings().recordSince(ProcessTimings.Phase.CLASSPATH_RESOLUTION, classpathStart);
+        if (appCds) {
+            processExecutor.withJvmOptions(appCdsOptions(name, executable, commandArguments,
+                    additionalClasspathElements, dependencies));
+        }
+        return processExecutor;
     }
 
+    private ProcessExecutor createInJvmProcessExecutor(int instance) throws MojoExecutionException {
+        final String name = ProcessInstances.resolveName(this.name, instance, instances);
+        final List<String> ignored = new ArrayList<>();
+        if (executable != null) {
+            ignored.add("executable");
+        }
+        if (outputFile != null || pumpOutput) {
+            ignored.add("outputFile/pumpOutput");
+        }
+        if (!environmentVariables.isEmpty() || !systemProperties.isEmpty()) {
+            ignored.add("environmentVariables/systemProperties");
+        }
+        if (appCds || sampleResources) {
+            ignored.add("appCds/sampleResources");
+        }
+        if (cpuSet != null || cpus > 0 || niceness != null) {
+            ignored.add("cpuSet/cpus/niceness");
+        }
+        if (isKeepAlive()) {
+            ignored.add("keepAlive");
+        }
+        if (!ignored.isEmpty()) {
+            getLog().warn("Process '" + name + "' runs inside the Maven JVM, ignoring " + ignored);
+        }
+        final long classpathStart = System.nanoTime();
+        final List<String> mainArguments = ProcessInstances.resolveAll(buildCommandArguments(name,
+                CommandLineMode.INLINE, arguments, additionalClasspathElements, dependencies), instance);
+        final Set<String> classpathElements = resolveClasspathElements(additionalClasspathElements, dependencies);
+        final ProcessExecutor processExecutor = ProcessExecutor.createInJvm(name, mainClass, classpathElements,
+                mainArguments, shutdownMethod);
+        processExecutor.getTimings().recordSince(ProcessTimings.Phase.CLASSPATH_RESOLUTION, classpathStart);
+        return processExecutor;
+    }
 }
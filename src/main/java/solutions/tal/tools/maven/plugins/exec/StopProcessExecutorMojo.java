@@ -20,18 +20,28 @@ import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
 
-import java.io.IOException;
+import java.util.List;
 
 /**
  * @author Thuan Luong
  */
-@Mojo(name = "stop-all", defaultPhase = LifecyclePhase.POST_INTEGRATION_TEST)
+@Mojo(name = "stop-all", defaultPhase = LifecyclePhase.POST_INTEGRATION_TEST, threadSafe = true)
 public class StopProcessExecutorMojo extends AbstractProcessExecutorMojo {
 
+    /**
+     * Fail the build if a process exited unexpectedly or failed its health check while it was supposed to run.
+     */
+    @Parameter(defaultValue = "true")
+    private boolean failOnProcessFailure;
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
         waitForInterruptIfRequired();
-        stopAllProcesses();
+        final List<ProcessExecutor> stopped = stopAllProcesses();
+        if (failOnProcessFailure) {
+            failOnProcessFailures(stopped);
+        }
     }
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executors for the tasks of the plugin which spend their time blocked on processes: draining output, waiting for
+ * readiness and waiting for processes to stop. On Java 21 and later every task gets its own virtual thread, so a
+ * blocked task costs next to nothing; on older JREs tasks run on daemon platform threads. The JDK API is looked up
+ * reflectively, as the plugin is compiled for older JREs.
+ *
+ * @author Thuan Luong
+ */
+final class TaskExecutors {
+
+    private static final Method OF_VIRTUAL = findMethod(Thread.class, "ofVirtual");
+
+    private static final Method NAME = OF_VIRTUAL != null
+            ? findMethod(OF_VIRTUAL.getReturnType(), "name", String.class, long.class) : null;
+
+    private static final Method FACTORY = OF_VIRTUAL != null ? findMethod(OF_VIRTUAL.getReturnType(), "factory") : null;
+
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR = findMethod(Executors.class,
+            "newThreadPerTaskExecutor", ThreadFactory.class);
+
+    private TaskExecutors() {
+    }
+
+    static boolean isVirtual() {
+        return OF_VIRTUAL != null && NAME != null && FACTORY != null && NEW_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * @param namePrefix prefix of the thread names, followed by a counter
+     * @param maxConcurrency maximum number of tasks running at the same time, or zero for no limit; without a limit
+     *                       the platform thread fallback creates threads as needed
+     */
+    static ExecutorService newExecutor(String namePrefix, int maxConcurrency) {
+        if (isVirtual()) {
+            try {
+                final Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 0L);
+                final ThreadFactory factory = (ThreadFactory) FACTORY.invoke(builder);
+                final ExecutorService executor = (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+                return maxConcurrency > 0 ? new ConcurrencyLimitingExecutor(executor, maxConcurrency) : executor;
+            } catch (ReflectiveOperationException e) {
+                // fall back to platform threads
+            }
+        }
+        final ThreadFactory factory = new ThreadFactoryBuilder().setDaemon(true).setNameFormat(namePrefix + "%d").build();
+        return maxConcurrency > 0
+                ? Executors.newFixedThreadPool(maxConcurrency, factory)
+                : Executors.newCachedThreadPool(factory);
+    }
+
+    private static Method findMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+        try {
+            return type.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Runs every task on its own thread of the delegate, but lets at most a given number of them proceed at a time.
+     */
+    private static final class ConcurrencyLimitingExecutor extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+
+        private final Semaphore permits;
+
+        private ConcurrencyLimitingExecutor(ExecutorService delegate, int maxConcurrency) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(maxConcurrency);
+        }
+
+        @Override
+        public void execute(final Runnable command) {
+            delegate.execute(new Runnable() {
+                @Override
+                public void run() {
+                    boolean acquired = false;
+                    try {
+                        permits.acquire();
+                        acquired = true;
+                    } catch (InterruptedException e) {
+                        // still run the task, so that its future completes, but let it see the interruption
+                        Thread.currentThread().interrupt();
+                    }
+                    try {
+                        command.run();
+                    } finally {
+                        if (acquired) {
+                            permits.release();
+                        }
+                    }
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
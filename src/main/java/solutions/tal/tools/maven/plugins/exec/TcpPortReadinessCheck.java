@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * Declares a process ready as soon as a TCP connection to {@code host:port} can be established. The
+ * {@code @{instance}} placeholder in {@code host} and {@code port} is replaced with the index of the replica being
+ * checked, so that {@code 808@{instance}} probes port 8080 for the first replica, 8081 for the second and so on.
+ *
+ * @author Thuan Luong
+ */
+public class TcpPortReadinessCheck extends AbstractPollingReadinessCheck {
+
+    private String host = "localhost";
+
+    private String port;
+
+    private int connectTimeoutMillis = 1000;
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public void setPort(String port) {
+        this.port = port;
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    @Override
+    String describe(ProcessExecutor process) {
+        return String.format("TCP port %s:%s", ProcessInstances.resolve(host, process.getInstance()),
+                ProcessInstances.resolve(port, process.getInstance()));
+    }
+
+    @Override
+    Probe createProbe(final Log log, ProcessExecutor process) throws MojoExecutionException {
+        final String host = ProcessInstances.resolve(this.host, process.getInstance());
+        final String resolvedPort = ProcessInstances.resolve(this.port, process.getInstance());
+        final int port;
+        try {
+            port = Integer.parseInt(String.valueOf(resolvedPort).trim());
+        } catch (NumberFormatException e) {
+            throw new MojoExecutionException("Invalid readiness port: " + resolvedPort, e);
+        }
+        if (port < 0 || port > 0xFFFF) {
+            throw new MojoExecutionException("Invalid readiness port: " + resolvedPort);
+        }
+        return new Probe() {
+            @Override
+            public boolean isReady() {
+                try (Socket socket = new Socket()) {
+                    socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+                    return true;
+                } catch (IOException e) {
+                    if (log.isDebugEnabled()) {
+                        log.debug(String.format("Connection to %s:%d failed: %s", host, port, e.getMessage()));
+                    }
+                    return false;
+                }
+            }
+        };
+    }
+}
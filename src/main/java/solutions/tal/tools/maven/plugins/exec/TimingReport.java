@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import com.google.common.base.Charsets;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the {@link ProcessTimings} of every process stopped during the reactor build and writes them to a
+ * single JSON report. Like {@link SharedProcessRegistry} it relies on the plugin class realm being shared by all
+ * modules of the build. The entries are reset whenever a new session starts, as a build daemon reuses the realm for
+ * later builds.
+ *
+ * @author Thuan Luong
+ */
+final class TimingReport {
+
+    private static final List<String> ENTRIES = new ArrayList<>();
+
+    private static WeakReference<Object> session = new WeakReference<>(null);
+
+    private TimingReport() {
+    }
+
+    static void add(Object session, String projectId, ProcessExecutor processExecutor) {
+        final String entry = "{\"project\":" + Json.quote(projectId) + ",\"process\":" + Json.quote(processExecutor.getName())
+                + ",\"timingsMillis\":" + processExecutor.getTimings().toJson() + "}";
+        synchronized (ENTRIES) {
+            if (TimingReport.session.get() != session) {
+                ENTRIES.clear();
+                TimingReport.session = new WeakReference<>(session);
+            }
+            ENTRIES.add(entry);
+        }
+    }
+
+    /**
+     * Rewrites the report with all entries collected so far.
+     */
+    static void write(File file, Log log) {
+        final StringBuilder sb = new StringBuilder("{\"processes\":[\n");
+        // held while writing so that modules finishing concurrently cannot overwrite a report with an older one
+        synchronized (ENTRIES) {
+            for (int i = 0; i < ENTRIES.size(); i++) {
+                sb.append("  ").append(ENTRIES.get(i)).append(i < ENTRIES.size() - 1 ? ",\n" : "\n");
+            }
+            sb.append("]}\n");
+            try {
+                Files.createDirectories(file.getParentFile().toPath());
+                Files.write(file.toPath(), sb.toString().getBytes(Charsets.UTF_8));
+            } catch (IOException e) {
+                log.warn("Could not write timing report " + file + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Thuan Anh Luong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package solutions.tal.tools.maven.plugins.exec;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Declares a process ready once it has created the Unix domain socket at {@code path}, in which the
+ * {@code @{instance}} placeholder is replaced with the index of the replica being checked.
+ * <p>
+ * The JDK targeted by this plugin cannot connect to Unix domain sockets, so the check looks at the file type
+ * reported by the {@code unix} file attribute view instead; on platforms without that view any file at
+ * {@code path} is accepted.
+ *
+ * @author Thuan Luong
+ */
+public class UnixSocketReadinessCheck extends AbstractPollingReadinessCheck {
+
+    private static final int S_IFMT = 0170000;
+
+    private static final int S_IFSOCK = 0140000;
+
+    private String path;
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    @Override
+    String describe(ProcessExecutor process) {
+        return "Unix socket " + ProcessInstances.resolve(path, process.getInstance());
+    }
+
+    @Override
+    Probe createProbe(final Log log, ProcessExecutor process) {
+        final String path = ProcessInstances.resolve(this.path, process.getInstance());
+        final Path socketPath = Paths.get(path);
+        return new Probe() {
+            @Override
+            public boolean isReady() {
+                if (!Files.exists(socketPath, LinkOption.NOFOLLOW_LINKS)) {
+                    return false;
+                }
+                try {
+                    final int mode = (Integer) Files.getAttribute(socketPath, "unix:mode", LinkOption.NOFOLLOW_LINKS);
+                    return (mode & S_IFMT) == S_IFSOCK;
+                } catch (UnsupportedOperationException e) {
+                    return true;
+                } catch (IOException e) {
+                    if (log.isDebugEnabled()) {
+                        log.debug(String.format("Could not read attributes of %s: %s", path, e.getMessage()));
+                    }
+                    return false;
+                }
+            }
+        };
+    }
+}